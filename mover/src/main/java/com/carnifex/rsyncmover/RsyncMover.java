@@ -7,9 +7,12 @@ import com.carnifex.rsyncmover.config.Config;
 import com.carnifex.rsyncmover.config.ConfigLoader;
 import com.carnifex.rsyncmover.config.ConfigWatcher;
 import com.carnifex.rsyncmover.email.Emailer;
+import com.carnifex.rsyncmover.mover.io.ContentIndex;
 import com.carnifex.rsyncmover.mover.io.FileChangeWatcher;
 import com.carnifex.rsyncmover.mover.io.FileWatcher;
+import com.carnifex.rsyncmover.mover.io.MoveJournal;
 import com.carnifex.rsyncmover.mover.io.Mover;
+import com.carnifex.rsyncmover.mover.io.MoverMatcher;
 import com.carnifex.rsyncmover.mover.io.MoverThread;
 import com.carnifex.rsyncmover.notifications.Notifier;
 import com.carnifex.rsyncmover.sync.Sftp;
@@ -83,14 +86,16 @@ public class RsyncMover {
         components.putIfAbsent(Emailer.class, emailers);
         config.getAgents().forEach(Notifier::create);
         final List<Mover> movers = config.getMovers().stream().map(m -> new Mover(m, audit)).collect(Collectors.toList());
+        final MoverMatcher moverMatcher = new MoverMatcher(movers);
 
         final Lock simultaneousLock = config.isAllowSimultaneousTasks() ? null : new ReentrantLock();
 
         if (config.moveFiles()) {
             final MoverThread moverThread = initMoverThread(config, simultaneousLock, audit);
+            moverThread.recover(movers);
             final String moverPassivateLocation = config.getMoverPassivateLocation();
             final SyncedFiles syncedFiles = new SyncedFiles(moverPassivateLocation != null ? Paths.get(moverPassivateLocation) : null);
-            final FileChangeWatcher fileChangeWatcher = new FileChangeWatcher(movers, moverThread, syncedFiles, audit);
+            final FileChangeWatcher fileChangeWatcher = new FileChangeWatcher(moverMatcher, moverThread, syncedFiles, audit);
             final List<FileWatcher> fileWatchers = initFileWatchers(config, moverThread, fileChangeWatcher, audit);
             if (fileWatchers.stream().noneMatch(FileWatcher::isActive)) {
                 throw new IllegalArgumentException("No file watchers were able to be initialised");
@@ -106,7 +111,7 @@ public class RsyncMover {
         if (config.downloadFiles()) {
             final List<Sftp> sftps = initSshs(config, simultaneousLock, totalDownloaded);
             final MoverThread moverThread = config.moveFiles() ? (MoverThread) components.get(MoverThread.class) : null;
-            final Syncer syncer = initSyncer(config, movers, sftps, moverThread, audit);
+            final Syncer syncer = initSyncer(config, moverMatcher, sftps, moverThread, audit);
             components.putIfAbsent(Sftp.class, sftps);
             components.putIfAbsent(Syncer.class, syncer);
             logger.info("File downloading successfully initiated");
@@ -119,7 +124,7 @@ public class RsyncMover {
         }
 
         if (config.runServer()) {
-            final Server server = new Server(config.getPort(), (Syncer) components.get(Syncer.class), movers, audit);
+            final Server server = new Server(config.getPort(), (Syncer) components.get(Syncer.class), moverMatcher, audit);
             components.putIfAbsent(Server.class, server);
         }
 
@@ -213,15 +218,20 @@ public class RsyncMover {
     }
 
     private static MoverThread initMoverThread(final Config config, final Lock simultaneousLock, final Audit audit) {
+        final String moveJournalLocation = config.getMoveJournalLocation();
+        final MoveJournal journal = new MoveJournal(moveJournalLocation != null ? Paths.get(moveJournalLocation) : null);
+        final String duplicateIndexLocation = config.getDuplicateIndexLocation();
+        final ContentIndex contentIndex = new ContentIndex(duplicateIndexLocation != null ? Paths.get(duplicateIndexLocation) : null);
         return new MoverThread(config.getFilePermissions(), config.getFolderPermissions(), config.getUserPrincipal(), config.getDeleteDuplicateFiles(),
-                simultaneousLock, audit);
+                simultaneousLock, config.getMoverLanes(), config.getMoverLaneDepth(), config.getMoverQueueOrder(),
+                config.getMoverQueueAging(), config.getMoverStageThreads(), config.getMoverStageDepth(), journal, contentIndex, audit);
     }
 
     @SuppressWarnings("unchecked")
     private static List<FileWatcher> initFileWatchers(final Config config, final MoverThread moverThread, final FileChangeWatcher fileChangeWatcher, final Audit audit) {
         final List<FileWatcher> watchers = config.getWatchDir().stream().map(watch -> new FileWatcher(watch,
                 asSet(config.getPassivateLocation(), config.getAuditPassivateLocation()),
-                fileChangeWatcher, config.isLazyPolling(), audit)).collect(Collectors.toList());
+                fileChangeWatcher, config.isLazyPolling(), config.useInotify(), audit)).collect(Collectors.toList());
         final Thread hook = new Thread(() -> {
             // finish any pending moves before shutting down vm
             watchers.forEach(FileWatcher::shutdown);
@@ -232,12 +242,12 @@ public class RsyncMover {
     }
 
     @SuppressWarnings("unchecked")
-    private static Syncer initSyncer(final Config config, final List<Mover> movers, final List<Sftp> sftps,
+    private static Syncer initSyncer(final Config config, final MoverMatcher moverMatcher, final List<Sftp> sftps,
                                      final MoverThread moverThread, final Audit audit) {
         final SyncedFiles syncedFiles = new SyncedFiles(Paths.get(config.getPassivateLocation()));
         final Syncer syncer = new Syncer(config.getWatchDir(), sftps, syncedFiles, config.getSyncFrequency(),
                 config.shouldDepassivateEachTime(), config.getMinimumFreeSpaceForDownload(), config.getFilePermissions(),
-                config.downloadsMustMatchMover(), movers, config.isLazyPolling(),
+                config.downloadsMustMatchMover(), moverMatcher, config.isLazyPolling(),
                 config.maxConcurrentDownloads(), config.isRunOnce(), (List<FileWatcher>) components.get(FileWatcher.class),
                 moverThread, audit);
         // finish any pending downloads before shutting down vm
@@ -7,4 +7,8 @@ public class Utilities {
     public static boolean isRunningOnWindows() {
         return System.getProperty("os.name").toLowerCase().contains("win");
     }
+
+    public static boolean isRunningOnLinux() {
+        return System.getProperty("os.name").toLowerCase().contains("linux");
+    }
 }
@@ -2,7 +2,10 @@ package com.carnifex.rsyncmover.audit;
 
 import com.carnifex.rsyncmover.audit.entry.Entry;
 import com.carnifex.rsyncmover.audit.entry.ErrorEntry;
+import com.carnifex.rsyncmover.mover.io.CopyProgress;
 import com.carnifex.rsyncmover.mover.io.MoverThread;
+import com.carnifex.rsyncmover.mover.io.MoverThread.LaneStatus;
+import com.carnifex.rsyncmover.mover.io.ProcessRunner;
 import com.carnifex.rsyncmover.sync.Sftp;
 import com.carnifex.rsyncmover.sync.Sftp.DownloadWatcher;
 import org.apache.commons.io.FileUtils;
@@ -310,11 +313,60 @@ public class Audit extends Thread {
 
     public String getMoveStatus() {
         return moverThreads.stream()
-                .map(mt -> mt.getCurrentlyMovingObject())
+                .flatMap(mt -> mt.getLaneStatuses().stream())
                 .map(s -> "<span>" + s + "</span>")
                 .collect(Collectors.joining("<br />"));
     }
 
+    // how each external command (filebot, beets, cp) has got on since starting
+    public String getProcessStatus() {
+        return ProcessRunner.getStatistics().stream()
+                .map(s -> "<span>" + s + "</span>")
+                .collect(Collectors.joining("<br />"));
+    }
+
+    // the same as getMoveStatus, as a json array with an object for each lane
+    public String getMoveStatusJson() {
+        return moverThreads.stream()
+                .flatMap(mt -> mt.getLanes().stream())
+                .map(Audit::toJson)
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private static String toJson(final LaneStatus status) {
+        final StringBuilder json = new StringBuilder("{");
+        json.append("\"lane\":").append(jsonString(status.getLane()));
+        json.append(",\"queued\":").append(status.getQueued());
+        if (status.getOperator() != null) {
+            json.append(",\"operator\":").append(jsonString(status.getOperator()));
+            json.append(",\"from\":").append(jsonString(status.getFrom().toString()));
+            json.append(",\"to\":").append(jsonString(status.getTo().toString()));
+        }
+        final CopyProgress progress = status.getProgress();
+        if (progress != null) {
+            json.append(",\"copied\":").append(progress.getCopied());
+            json.append(",\"total\":").append(progress.getTotal());
+            json.append(",\"bytesPerSecond\":").append(progress.getBytesPerSecond());
+            json.append(",\"secondsLeft\":").append(progress.getSecondsLeft());
+        }
+        return json.append("}").toString();
+    }
+
+    // visible for testing
+    static String jsonString(final String value) {
+        final StringBuilder json = new StringBuilder("\"");
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
     public String formatEmail() {
         final StringBuilder message = new StringBuilder();
         message.append("<html><body>");
@@ -3,6 +3,7 @@ package com.carnifex.rsyncmover.config;
 
 import com.carnifex.rsyncmover.beans.RsyncMover;
 import com.carnifex.rsyncmover.beans.RsyncMover.Servers.Server;
+import com.carnifex.rsyncmover.mover.io.MoveQueue;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -142,6 +143,45 @@ public class Config {
         return config.getServers().isDownloadFiles() && lazyPolling == null ? getDefault(config.getMovers(), "isLazyPolling", boolean.class) : lazyPolling;
     }
 
+    public int getMoverLanes() {
+        final Integer moverLanes = config.getMovers().getMoverLanes();
+        return moverLanes == null ? getDefault(config.getMovers(), "getMoverLanes", int.class) : moverLanes;
+    }
+
+    public int getMoverLaneDepth() {
+        final Integer moverLaneDepth = config.getMovers().getMoverLaneDepth();
+        return moverLaneDepth == null ? getDefault(config.getMovers(), "getMoverLaneDepth", int.class) : moverLaneDepth;
+    }
+
+    public MoveQueue.Order getMoverQueueOrder() {
+        final String moverQueueOrder = config.getMovers().getMoverQueueOrder();
+        return MoveQueue.Order.valueOf((moverQueueOrder == null ? getDefault(config.getMovers(), "getMoverQueueOrder", String.class) : moverQueueOrder).toUpperCase());
+    }
+
+    public long getMoverQueueAging() {
+        final Integer moverQueueAgingMinutes = config.getMovers().getMoverQueueAgingMinutes();
+        return (moverQueueAgingMinutes == null ? getDefault(config.getMovers(), "getMoverQueueAgingMinutes", int.class) : moverQueueAgingMinutes) * 60 * 1000L;
+    }
+
+    public int getMoverStageThreads() {
+        final Integer moverStageThreads = config.getMovers().getMoverStageThreads();
+        return moverStageThreads == null ? getDefault(config.getMovers(), "getMoverStageThreads", int.class) : moverStageThreads;
+    }
+
+    public int getMoverStageDepth() {
+        final Integer moverStageDepth = config.getMovers().getMoverStageDepth();
+        return moverStageDepth == null ? getDefault(config.getMovers(), "getMoverStageDepth", int.class) : moverStageDepth;
+    }
+
+    public String getMoveJournalLocation() {
+        return config.getMovers().getMoveJournalLocation();
+    }
+
+    public boolean useInotify() {
+        final Boolean useInotify = config.getMovers().isUseInotify();
+        return useInotify == null ? getDefault(config.getMovers(), "isUseInotify", boolean.class) : useInotify;
+    }
+
     public Set<PosixFilePermission> getFilePermissions() {
         final String permissions = config.getMovers().getMovedFilePermissions();
         return permissions != null ? PosixFilePermissions.fromString(permissions) : null;
@@ -166,6 +206,10 @@ public class Config {
         return deleteDuplicateFiles == null ? getDefault(config.getMovers(), "isDeleteDuplicateFiles", boolean.class) : deleteDuplicateFiles;
     }
 
+    public String getDuplicateIndexLocation() {
+        return config.getMovers().getDuplicateIndexLocation();
+    }
+
     public long getMinimumFreeSpaceForDownload() {
         final String minimumFreeSpaceToDownload = config.getServers().getMinimumFreeSpaceToDownload();
         final long multiplier = getMultiplier(minimumFreeSpaceToDownload);
@@ -4,39 +4,144 @@ package com.carnifex.rsyncmover.mover;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+// sets permissions and owner over a whole tree. each node's current mode and owner are read in the same pass and only
+// those that differ are changed, so reapplying them to a tree that's mostly right already is little more than a walk.
+// each directory's children are handled by its own task, so big trees are worked on in parallel. symlinks are left
+// alone rather than followed out of the tree
 public class Permissions {
 
     private static final Logger logger = LogManager.getLogger();
+    private static final int PERMISSION_THREADS = 4;
+    private static final ForkJoinPool permissionPool = new ForkJoinPool(PERMISSION_THREADS);
+    // the raw mode and uid, as the owner in PosixFileAttributes costs a lookup of the user's name for every node
+    private static final String ATTRIBUTES = "unix:mode,uid,isDirectory,isSymbolicLink";
+    private static final int PERMISSION_BITS = 0777;
 
     private Permissions() {}
 
     public static void setPermissions(final Path path, final Set<PosixFilePermission> filePermissions, final Set<PosixFilePermission> folderPermissions, final UserPrincipal userPrincipal) {
+        final long start = System.currentTimeMillis();
+        // the owner's only looked up for the top of the tree, and the uid it ends up with is what the rest is
+        // compared to. if it couldn't be set there it most likely can't be anywhere else either, so the rest of the
+        // tree just has its permissions set
+        boolean setOwner = userPrincipal != null;
+        if (setOwner) {
+            try {
+                if (!userPrincipal.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS))) {
+                    Files.setOwner(path, userPrincipal);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Error setting owner of " + path + " to " + userPrincipal.getName() + ", only setting permissions", e);
+                setOwner = false;
+            }
+        }
         try {
-            if (Files.isDirectory(path)) {
-                Files.setPosixFilePermissions(path, folderPermissions);
-            } else {
-                Files.setPosixFilePermissions(path, filePermissions);
+            final Map<String, Object> attributes = readAttributes(path);
+            final Apply apply = new Apply(path, attributes, filePermissions, folderPermissions, userPrincipal,
+                    setOwner ? (Integer) attributes.get("uid") : null);
+            final int changed = (Boolean) attributes.get("isDirectory") ? permissionPool.invoke(apply) : apply.applyTo(path, attributes);
+            logger.debug("Changed permissions on " + changed + " nodes under " + path + " in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Error setting file permissions on " + path, e);
+        }
+    }
+
+    private static Map<String, Object> readAttributes(final Path path) throws IOException {
+        return Files.readAttributes(path, ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private static int toMode(final Set<PosixFilePermission> permissions) {
+        int mode = 0;
+        for (final PosixFilePermission permission : permissions) {
+            // declared from OWNER_READ (0400) down to OTHERS_EXECUTE (0001)
+            mode |= 1 << (8 - permission.ordinal());
+        }
+        return mode;
+    }
+
+    // returns how many nodes were changed. each node's attributes are read once, when its parent is listed, and used
+    // both to tell if it's a directory and to tell what needs changing
+    private static final class Apply extends RecursiveTask<Integer> {
+        private final Path directory;
+        private final Map<String, Object> attributes;
+        private final Set<PosixFilePermission> filePermissions;
+        private final Set<PosixFilePermission> folderPermissions;
+        private final UserPrincipal userPrincipal;
+        private final Integer uid;
+
+        private Apply(final Path directory, final Map<String, Object> attributes, final Set<PosixFilePermission> filePermissions,
+                      final Set<PosixFilePermission> folderPermissions, final UserPrincipal userPrincipal, final Integer uid) {
+            this.directory = directory;
+            this.attributes = attributes;
+            this.filePermissions = filePermissions;
+            this.folderPermissions = folderPermissions;
+            this.userPrincipal = userPrincipal;
+            this.uid = uid;
+        }
+
+        @Override
+        protected Integer compute() {
+            int changed = applyTo(directory, attributes);
+            final List<Apply> subdirectories = new ArrayList<>();
+            try (final DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (final Path child : children) {
+                    final Map<String, Object> childAttributes;
+                    try {
+                        childAttributes = readAttributes(child);
+                    } catch (IOException | RuntimeException e) {
+                        logger.warn("Error setting file permissions on " + child, e);
+                        continue;
+                    }
+                    if ((Boolean) childAttributes.get("isDirectory")) {
+                        final Apply subdirectory = new Apply(child, childAttributes, filePermissions, folderPermissions, userPrincipal, uid);
+                        subdirectory.fork();
+                        subdirectories.add(subdirectory);
+                    } else {
+                        changed += applyTo(child, childAttributes);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Error setting file permissions on " + directory, e);
             }
-            if (userPrincipal != null) {
-                Files.setOwner(path, userPrincipal);
+            for (final Apply subdirectory : subdirectories) {
+                changed += subdirectory.join();
             }
-        } catch (IOException e) {
-            logger.warn("Error setting file permissions on " + path, e);
+            return changed;
         }
-        if (Files.isDirectory(path)) {
+
+        private int applyTo(final Path path, final Map<String, Object> attributes) {
+            if ((Boolean) attributes.get("isSymbolicLink")) {
+                return 0;
+            }
             try {
-                Files.list(path).forEach(p -> setPermissions(p, filePermissions, folderPermissions, userPrincipal));
-            } catch (IOException e) {
+                final Set<PosixFilePermission> permissions = (Boolean) attributes.get("isDirectory") ? folderPermissions : filePermissions;
+                boolean changed = false;
+                if (permissions != null && ((Integer) attributes.get("mode") & PERMISSION_BITS) != toMode(permissions)) {
+                    Files.setPosixFilePermissions(path, permissions);
+                    changed = true;
+                }
+                if (uid != null && !uid.equals(attributes.get("uid"))) {
+                    Files.setOwner(path, userPrincipal);
+                    changed = true;
+                }
+                return changed ? 1 : 0;
+            } catch (IOException | RuntimeException e) {
                 logger.warn("Error setting file permissions on " + path, e);
+                return 0;
             }
         }
     }
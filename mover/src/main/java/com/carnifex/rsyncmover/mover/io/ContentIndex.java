@@ -0,0 +1,284 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// tells whether two files or trees hold the same data. each file is first compared by size, then by a hash of a few
+// blocks from its start, middle and end, and only if those all match is the whole of it hashed. hashes are kept against
+// the file's inode, size, modified time and changed time, so a file that hasn't changed is never read twice, and are
+// saved to the index file if there is one, at most once a minute and when it's closed, so that carries on across
+// restarts
+public class ContentIndex {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final String SEPARATOR = "\t";
+    private static final int SAMPLE_BLOCK = 64 * 1024;
+    private static final int SAMPLE_BLOCKS = 3;
+    private static final int READ_BUFFER = 1024 * 1024;
+    private static final long PERSIST_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Path location;
+    private final Map<Path, Entry> entries;
+    private final AtomicLong bytesHashed;
+    private volatile boolean unsaved;
+    private long lastPersisted;
+
+    public ContentIndex(final Path location) {
+        this.location = location;
+        this.entries = new ConcurrentHashMap<>();
+        this.bytesHashed = new AtomicLong(0);
+        if (location != null) {
+            read();
+        }
+    }
+
+    // true if both are files with the same data, or both are directories with the same files in the same places. the
+    // times and permissions of either don't matter, but symlinks do, and only match a symlink to the same place
+    public boolean sameContents(final Path a, final Path b) throws IOException {
+        final Map<Path, BasicFileAttributes> aFiles = list(a);
+        final Map<Path, BasicFileAttributes> bFiles = list(b);
+        if (!aFiles.keySet().equals(bFiles.keySet())) {
+            return false;
+        }
+        for (final Map.Entry<Path, BasicFileAttributes> file : aFiles.entrySet()) {
+            final BasicFileAttributes other = bFiles.get(file.getKey());
+            if (file.getValue().isDirectory() != other.isDirectory() || file.getValue().isSymbolicLink() != other.isSymbolicLink()
+                    || (file.getValue().isRegularFile() && file.getValue().size() != other.size())) {
+                return false;
+            }
+        }
+        for (final Map.Entry<Path, BasicFileAttributes> file : aFiles.entrySet()) {
+            if (file.getValue().isSymbolicLink() && !Files.readSymbolicLink(a.resolve(file.getKey()))
+                    .equals(Files.readSymbolicLink(b.resolve(file.getKey())))) {
+                return false;
+            }
+        }
+        try {
+            for (final Path relative : aFiles.keySet()) {
+                if (!aFiles.get(relative).isRegularFile()) {
+                    continue;
+                }
+                final Path aFile = a.resolve(relative);
+                final Path bFile = b.resolve(relative);
+                final Entry aEntry = getEntry(aFile, aFiles.get(relative), false);
+                final Entry bEntry = getEntry(bFile, bFiles.get(relative), false);
+                if (!aEntry.sample.equals(bEntry.sample)) {
+                    return false;
+                }
+                // the sample covers the whole of a small file
+                if (aEntry.size > SAMPLE_BLOCK * SAMPLE_BLOCKS && !getEntry(aFile, aFiles.get(relative), true).full
+                        .equals(getEntry(bFile, bFiles.get(relative), true).full)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            persist(false);
+        }
+    }
+
+    // saves whatever hasn't been yet
+    public void close() {
+        persist(true);
+    }
+
+    // how much file data has been read to hash it, visible for testing
+    long getBytesHashed() {
+        return bytesHashed.get();
+    }
+
+    // every regular file, directory and symlink under the path by where it is relative to it, with the path itself as the
+    // empty path. symlinks aren't followed
+    private static Map<Path, BasicFileAttributes> list(final Path path) throws IOException {
+        final Map<Path, BasicFileAttributes> files = new TreeMap<>();
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        files.put(Paths.get(""), attributes);
+        if (attributes.isDirectory()) {
+            list(path, path, files);
+        }
+        return files;
+    }
+
+    private static void list(final Path root, final Path directory, final Map<Path, BasicFileAttributes> files) throws IOException {
+        try (final DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (final Path child : children) {
+                final BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    files.put(root.relativize(child), attributes);
+                    list(root, child, files);
+                } else if (attributes.isRegularFile() || attributes.isSymbolicLink()) {
+                    files.put(root.relativize(child), attributes);
+                }
+            }
+        }
+    }
+
+    private Entry getEntry(final Path file, final BasicFileAttributes attributes, final boolean needFull) throws IOException {
+        final Path key = file.toAbsolutePath();
+        final String fileKey = String.valueOf(attributes.fileKey());
+        final long modified = attributes.lastModifiedTime().toMillis();
+        final long changed = getChangedTime(file);
+        final Entry cached = entries.get(key);
+        final boolean unchanged = cached != null && cached.matches(attributes.size(), modified, changed, fileKey);
+        if (unchanged && (!needFull || cached.full != null)) {
+            return cached;
+        }
+        final String sample = unchanged ? cached.sample : hashSample(file, attributes.size());
+        final Entry entry = new Entry(attributes.size(), modified, changed, fileKey, sample, needFull ? hashAll(file) : null);
+        entries.put(key, entry);
+        unsaved = true;
+        return entry;
+    }
+
+    // the inode's changed time, which unlike the modified time can't be set back, or 0 where there isn't one
+    private static long getChangedTime(final Path file) throws IOException {
+        try {
+            return ((FileTime) Files.getAttribute(file, "unix:ctime", LinkOption.NOFOLLOW_LINKS)).to(TimeUnit.NANOSECONDS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private String hashSample(final Path file, final long size) throws IOException {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putLong(size);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (size <= SAMPLE_BLOCK * SAMPLE_BLOCKS) {
+                hash(channel, 0, size, hasher);
+            } else {
+                final long step = (size - SAMPLE_BLOCK) / (SAMPLE_BLOCKS - 1);
+                for (int block = 0; block < SAMPLE_BLOCKS; block++) {
+                    hash(channel, block * step, SAMPLE_BLOCK, hasher);
+                }
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private String hashAll(final Path file) throws IOException {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            hash(channel, 0, channel.size(), hasher);
+        }
+        return hasher.hash().toString();
+    }
+
+    private void hash(final FileChannel channel, final long from, final long length, final Hasher hasher) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER, Math.max(length, 1)));
+        long position = from;
+        final long end = from + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            hasher.putBytes(buffer.array(), 0, read);
+            position += read;
+        }
+        bytesHashed.addAndGet(position - from);
+    }
+
+    private void read() {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(location, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            logger.error("Could not read content index " + location + ", files will be hashed again", e);
+            return;
+        }
+        for (final String line : lines) {
+            final String[] fields = line.split(SEPARATOR, -1);
+            try {
+                final Path path = Paths.get(fields[0]);
+                // forget files that have gone, most likely moved on or replaced, and those saved before changed times were
+                if (fields.length == 7 && Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                    entries.put(path, new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                            fields[4], fields[5], fields[6].isEmpty() ? null : fields[6]));
+                } else {
+                    unsaved = true;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Ignoring unreadable line in content index " + location + ": " + line, e);
+            }
+        }
+    }
+
+    // rewrites the whole index, replacing the old file in one go so a crash part way leaves one or the other. unless
+    // forced, it's left for a minute after it was last written, as it's only a cache and is rewritten whole each time
+    private synchronized void persist(final boolean force) {
+        final long now = System.currentTimeMillis();
+        if (location == null || !unsaved || (!force && now - lastPersisted < PERSIST_INTERVAL)) {
+            return;
+        }
+        unsaved = false;
+        lastPersisted = now;
+        final String lines = entries.entrySet().stream()
+                .filter(entry -> !entry.getKey().toString().contains(SEPARATOR) && !entry.getKey().toString().contains("\n"))
+                .map(entry -> entry.getKey() + SEPARATOR + entry.getValue())
+                .collect(Collectors.joining("\n"));
+        final Path temp = location.resolveSibling(location.getFileName() + ".tmp");
+        try {
+            Files.write(temp, lines.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Could not save content index " + location, e);
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final long changed;
+        private final String fileKey;
+        private final String sample;
+        private final String full;
+
+        private Entry(final long size, final long modified, final long changed, final String fileKey, final String sample, final String full) {
+            this.size = size;
+            this.modified = modified;
+            this.changed = changed;
+            this.fileKey = fileKey;
+            this.sample = sample;
+            this.full = full;
+        }
+
+        private boolean matches(final long size, final long modified, final long changed, final String fileKey) {
+            return this.size == size && this.modified == modified && this.changed == changed && Objects.equals(this.fileKey, fileKey);
+        }
+
+        @Override
+        public String toString() {
+            return size + SEPARATOR + modified + SEPARATOR + changed + SEPARATOR + fileKey + SEPARATOR + sample + SEPARATOR + (full != null ? full : "");
+        }
+    }
+}
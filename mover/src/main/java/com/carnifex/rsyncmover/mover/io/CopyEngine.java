@@ -0,0 +1,475 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import com.carnifex.rsyncmover.Utilities;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// copies and moves files and directory trees. a move within a file store is a rename; anything else is copied with
+// FileChannel.transferTo, which lets the kernel copy between the files itself (copy_file_range or sendfile) rather than
+// through a buffer in the vm. a tree's files are copied in parallel, and each file's times and permissions are set from
+// the attributes read when the tree was listed rather than by another pass over the copy afterwards. on file systems
+// that support it (btrfs, xfs) a copy can instead clone the data, which shares it until either side is changed
+public class CopyEngine {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final int COPY_THREADS = 8;
+    // how many of a tree's files can be in the pool at once, queued or being copied. the pool's shared by every lane,
+    // so this stops one big tree queueing all its files ahead of a copy in another lane, and leaves threads free for it
+    private static final int TREE_THREADS = COPY_THREADS / 2;
+    private static final long TRANSFER_CHUNK = 64 * 1024 * 1024;
+    private static final int HASHING_BUFFER = 1024 * 1024;
+    private static final ExecutorService copyPool;
+    // cp's message when the file system can't clone, as opposed to it failing for some other reason. cp is run in the
+    // C locale so the message isn't translated
+    private static final String CLONE_FAILED = "failed to clone";
+    private static final Set<FileStore> cannotClone = ConcurrentHashMap.newKeySet();
+    // where copies on this thread report to when they aren't given a progress of their own. the lanes set it for each
+    // move they make, so whichever operators the move goes through, its status can show how far it's got
+    private static final ThreadLocal<CopyProgress> threadProgress = new ThreadLocal<>();
+    // told when a move on this thread has copied everything and is about to delete the source, so the lanes can journal
+    // that a move cut off from then on should finish deleting rather than throw the copy away
+    private static final ThreadLocal<BiConsumer<Path, Path>> threadCheckpoint = new ThreadLocal<>();
+
+    static {
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        copyPool = new ThreadPoolExecutor(COPY_THREADS, COPY_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    final Thread thread = new Thread(r, "CopyThread" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private CopyEngine() {}
+
+    static void setThreadProgress(final CopyProgress progress) {
+        if (progress == null) {
+            threadProgress.remove();
+        } else {
+            threadProgress.set(progress);
+        }
+    }
+
+    static void setThreadCheckpoint(final BiConsumer<Path, Path> checkpoint) {
+        if (checkpoint == null) {
+            threadCheckpoint.remove();
+        } else {
+            threadCheckpoint.set(checkpoint);
+        }
+    }
+
+    public static Path move(final Path from, final Path to) throws IOException {
+        return move(from, to, null);
+    }
+
+    // progress, if given, is told about any data that has to be copied rather than renamed
+    public static Path move(final Path from, final Path to, final CopyProgress progress) throws IOException {
+        checkTarget(to);
+        final FileStore fromStore = getFileStore(from);
+        if (fromStore != null && fromStore.equals(getFileStore(to))) {
+            try {
+                Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+                return to;
+            } catch (AtomicMoveNotSupportedException e) {
+                // for eg bind mounts of the same device, which look like one store but can't be renamed across
+                logger.debug("Could not rename " + from + " to " + to + ", copying instead", e);
+            }
+        }
+        // like a rename, a link is moved as the link rather than what it points to
+        copy(from, to, new TreeCopy(Files.getFileStore(from).supportsFileAttributeView(PosixFileAttributeView.class),
+                progress != null ? progress : threadProgress.get(), null, false), false);
+        final BiConsumer<Path, Path> checkpoint = threadCheckpoint.get();
+        if (checkpoint != null) {
+            checkpoint.accept(from, to);
+        }
+        if (Files.isDirectory(from, LinkOption.NOFOLLOW_LINKS)) {
+            FileUtils.deleteDirectory(from.toFile());
+        } else {
+            Files.delete(from);
+        }
+        return to;
+    }
+
+    public static Path copy(final Path from, final Path to) throws IOException {
+        return copy(from, to, Reflink.NEVER);
+    }
+
+    public static Path copy(final Path from, final Path to, final Reflink reflink) throws IOException {
+        return copy(from, to, reflink, null);
+    }
+
+    public static Path copy(final Path from, final Path to, final Reflink reflink, final CopyProgress progress) throws IOException {
+        checkTarget(to);
+        if (reflink != Reflink.NEVER && clone(from, to, reflink == Reflink.ALWAYS)) {
+            return to;
+        }
+        copy(from, to, new TreeCopy(Files.getFileStore(from).supportsFileAttributeView(PosixFileAttributeView.class),
+                progress != null ? progress : threadProgress.get(), null, false), true);
+        return to;
+    }
+
+    // copies the data through a buffer rather than letting the kernel do it, so it can be hashed on its way from one file
+    // to the other, and returns the hash of each regular file by the file it was copied to. with sync each file is forced
+    // to disk before it's closed, so what was hashed is what's on the disk rather than what's in the page cache
+    public static Map<Path, HashCode> copyHashing(final Path from, final Path to, final HashFunction hashFunction, final boolean sync) throws IOException {
+        checkTarget(to);
+        final TreeCopy treeCopy = new TreeCopy(Files.getFileStore(from).supportsFileAttributeView(PosixFileAttributeView.class),
+                threadProgress.get(), hashFunction, sync);
+        copy(from, to, treeCopy, true);
+        return treeCopy.digests;
+    }
+
+    // a copy follows the link it's given, as Files.copy does, but not any links inside the tree
+    private static void copy(final Path from, final Path to, final TreeCopy treeCopy, final boolean followLink) throws IOException {
+        try {
+            treeCopy.copy(from, to, followLink);
+        } catch (IOException | RuntimeException e) {
+            // don't leave half a copy behind to be mistaken for a whole one, or to block a retry
+            deleteQuietly(to);
+            throw e;
+        }
+    }
+
+    // java can't ask for a clone (FICLONE) itself, so this goes through cp. returns false if the data needs copying
+    private static boolean clone(final Path from, final Path to, final boolean mustClone) throws IOException {
+        final FileStore store = getFileStore(from);
+        final String reason;
+        if (!Utilities.isRunningOnLinux()) {
+            reason = "Cloning is only supported on linux";
+        } else if (store == null || !store.equals(getFileStore(to))) {
+            reason = from + " and " + to + " are on different file systems, so can't be cloned";
+        } else if (cannotClone.contains(store)) {
+            reason = store + " does not support cloning";
+        } else {
+            final String failure = runClone(from, to);
+            if (failure == null) {
+                logger.debug("Cloned " + from + " to " + to);
+                return true;
+            }
+            deleteQuietly(to);
+            if (failure.contains(CLONE_FAILED)) {
+                // no point spawning cp for every copy just to have it fail again
+                logger.info(store + " does not support cloning, copying files on it instead");
+                cannotClone.add(store);
+            }
+            reason = "Could not clone " + from + " to " + to + ": " + failure;
+        }
+        if (mustClone) {
+            throw new IOException(reason);
+        }
+        logger.debug(reason + "; copying instead");
+        return false;
+    }
+
+    // returns cp's output if it failed
+    private static String runClone(final Path from, final Path to) throws IOException {
+        final ProcessRunner.Result result = ProcessRunner.run("cp", Arrays.asList("cp", "--reflink=always", "--recursive",
+                "-H", "--preserve=mode,timestamps", "--", from.toAbsolutePath().toString(), to.toAbsolutePath().toString()),
+                Collections.singletonMap("LC_ALL", "C"), 0, 0);
+        if (result.getExitCode() == 0) {
+            return null;
+        }
+        final List<String> output = new ArrayList<>(result.getStdout());
+        output.addAll(result.getStderr());
+        return String.join(System.lineSeparator(), output);
+    }
+
+    // the posix attributes include everything the basic ones do, so one stat covers the copy's times and permissions
+    private static BasicFileAttributes readAttributes(final Path path, final boolean posix, final boolean followLinks) throws IOException {
+        final LinkOption[] options = followLinks ? new LinkOption[0] : new LinkOption[] {LinkOption.NOFOLLOW_LINKS};
+        if (posix) {
+            return Files.readAttributes(path, PosixFileAttributes.class, options);
+        }
+        return Files.readAttributes(path, BasicFileAttributes.class, options);
+    }
+
+    private static BasicFileAttributes readAttributes(final Path path, final boolean posix) throws IOException {
+        return readAttributes(path, posix, false);
+    }
+
+    private static void await(final List<Future<?>> copies) throws IOException {
+        for (final Future<?> copy : copies) {
+            try {
+                copy.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while copying");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    // waits for every copy to stop, whether it finished, failed or was told to give up
+    private static void awaitQuietly(final List<Future<?>> copies) {
+        for (final Future<?> copy : copies) {
+            try {
+                Uninterruptibles.getUninterruptibly(copy);
+            } catch (ExecutionException | CancellationException ignore) {
+                // the first failure is the one that's thrown
+            }
+        }
+    }
+
+    private static void setAttributes(final Path path, final BasicFileAttributes attributes) {
+        try {
+            if (attributes instanceof PosixFileAttributes) {
+                final PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+                if (view != null) {
+                    view.setPermissions(((PosixFileAttributes) attributes).permissions());
+                }
+            }
+            Files.getFileAttributeView(path, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS)
+                    .setTimes(attributes.lastModifiedTime(), attributes.lastAccessTime(), null);
+        } catch (IOException e) {
+            logger.warn("Error copying times and permissions to " + path, e);
+        }
+    }
+
+    private static void checkTarget(final Path to) throws IOException {
+        if (Files.exists(to, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(to.toString());
+        }
+    }
+
+    private static void deleteQuietly(final Path path) {
+        try {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                FileUtils.deleteDirectory(path.toFile());
+            } else {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to clean up partial copy " + path, e);
+        }
+    }
+
+    // the file store of the path, or of whichever parent exists if it doesn't yet
+    static FileStore getFileStore(final Path path) {
+        for (Path p = path.toAbsolutePath(); p != null; p = p.getParent()) {
+            if (Files.exists(p)) {
+                try {
+                    return Files.getFileStore(p);
+                } catch (IOException e) {
+                    logger.debug("Unable to find file store for " + p, e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    // one copy of a file or tree, which may be spread over the pool
+    private static final class TreeCopy {
+        private final boolean posix;
+        private final CopyProgress progress;
+        private final HashFunction hashFunction;
+        private final boolean sync;
+        private final Map<Path, BasicFileAttributes> directories;
+        private final List<Future<?>> copies;
+        private final Map<Path, HashCode> digests;
+        private final Semaphore inFlight;
+        // set when the copy has failed, so the copies still running stop rather than write into a tree being deleted
+        private volatile boolean aborted;
+
+        private TreeCopy(final boolean posix, final CopyProgress progress, final HashFunction hashFunction, final boolean sync) {
+            this.posix = posix;
+            this.progress = progress;
+            this.hashFunction = hashFunction;
+            this.sync = sync;
+            this.directories = new LinkedHashMap<>();
+            this.copies = new ArrayList<>();
+            this.digests = new ConcurrentHashMap<>();
+            this.inFlight = new Semaphore(TREE_THREADS);
+            this.aborted = false;
+        }
+
+        private void copy(final Path from, final Path to, final boolean followLink) throws IOException {
+            final BasicFileAttributes attributes = readAttributes(from, posix, followLink);
+            if (!attributes.isDirectory()) {
+                addTotal(attributes);
+                copyEntry(from, to, attributes);
+                return;
+            }
+            try {
+                copyTree(from, to, attributes);
+                await(copies);
+            } catch (IOException | RuntimeException e) {
+                // the caller deletes the target when this throws, so nothing can still be writing into it by then
+                aborted = true;
+                awaitQuietly(copies);
+                throw e;
+            }
+            // copying into a directory changes its times, so they're set once everything's in, deepest first
+            final List<Path> targets = new ArrayList<>(directories.keySet());
+            Collections.reverse(targets);
+            for (final Path target : targets) {
+                setAttributes(target, directories.get(target));
+            }
+        }
+
+        // directories are created as they're reached, so their files can be copied while the rest of the tree is listed
+        private void copyTree(final Path from, final Path to, final BasicFileAttributes attributes) throws IOException {
+            Files.createDirectory(to);
+            directories.put(to, attributes);
+            try (final DirectoryStream<Path> children = Files.newDirectoryStream(from)) {
+                for (final Path child : children) {
+                    final Path target = to.resolve(child.getFileName().toString());
+                    final BasicFileAttributes childAttributes = readAttributes(child, posix);
+                    if (childAttributes.isDirectory()) {
+                        copyTree(child, target, childAttributes);
+                    } else {
+                        addTotal(childAttributes);
+                        try {
+                            inFlight.acquire();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while copying " + child);
+                        }
+                        copies.add(copyPool.submit(() -> {
+                            try {
+                                if (!aborted) {
+                                    copyEntry(child, target, childAttributes);
+                                }
+                                return null;
+                            } finally {
+                                inFlight.release();
+                            }
+                        }));
+                    }
+                }
+            }
+        }
+
+        private void copyEntry(final Path from, final Path to, final BasicFileAttributes attributes) throws IOException {
+            if (attributes.isSymbolicLink()) {
+                Files.createSymbolicLink(to, Files.readSymbolicLink(from));
+                return;
+            }
+            try (final FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+                 final FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                if (hashFunction != null) {
+                    digests.put(to, copyHashing(from, in, out));
+                } else {
+                    transfer(from, in, out);
+                }
+                if (sync) {
+                    out.force(true);
+                }
+            }
+            setAttributes(to, attributes);
+        }
+
+        private void transfer(final Path from, final FileChannel in, final FileChannel out) throws IOException {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                checkAborted(from);
+                // in chunks, as a single transfer of a big file would leave the progress at nothing until it's done
+                final long transferred = in.transferTo(position, Math.min(size - position, TRANSFER_CHUNK), out);
+                if (transferred <= 0) {
+                    throw new IOException(from + " was truncated while copying it, expected " + size + " bytes but got " + position);
+                }
+                position += transferred;
+                if (progress != null) {
+                    progress.addCopied(transferred);
+                }
+            }
+        }
+
+        // each buffer's hashed and then written, so the source is only read the once
+        private HashCode copyHashing(final Path from, final FileChannel in, final FileChannel out) throws IOException {
+            final Hasher hasher = hashFunction.newHasher();
+            final ByteBuffer buffer = ByteBuffer.allocate(HASHING_BUFFER);
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                checkAborted(from);
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                final int read = in.read(buffer);
+                if (read < 0) {
+                    throw new IOException(from + " was truncated while copying it, expected " + size + " bytes but got " + position);
+                }
+                hasher.putBytes(buffer.array(), 0, buffer.position());
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+                position += read;
+                if (progress != null) {
+                    progress.addCopied(read);
+                }
+            }
+            return hasher.hash();
+        }
+
+        private void checkAborted(final Path from) throws IOException {
+            if (aborted) {
+                throw new IOException("Stopped copying " + from + " as the rest of the copy failed");
+            }
+        }
+
+        private void addTotal(final BasicFileAttributes attributes) {
+            if (progress != null && attributes.isRegularFile()) {
+                progress.addTotal(attributes.size());
+            }
+        }
+    }
+
+    public enum Reflink {
+        // always copy the data
+        NEVER,
+        // clone where the file system can, and copy where it can't
+        AUTO,
+        // clone or fail
+        ALWAYS
+    }
+}
@@ -0,0 +1,98 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// how much of a copy is done. the total grows as the copy lists the tree, which is finished long before the data is,
+// and the copied count is added to by every thread copying a file, so both can be read at any time. the rate is the
+// average since the copy started, which is when it first listed or copied something rather than when the move was
+// picked up, so duplicate checks and setting up the target don't count against it. the time left assumes it carries on
+// at that rate
+public class CopyProgress {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final long MB = 1024 * 1024;
+
+    private final String name;
+    private final long reportInterval;
+    // 0 until the copy starts
+    private final AtomicLong started;
+    private final AtomicLong total;
+    private final AtomicLong copied;
+    private final AtomicLong lastReported;
+
+    // logs progress every reportInterval millis while data's being copied
+    public CopyProgress(final String name, final long reportInterval) {
+        this.name = name;
+        this.reportInterval = reportInterval;
+        this.started = new AtomicLong(0);
+        this.total = new AtomicLong(0);
+        this.copied = new AtomicLong(0);
+        this.lastReported = new AtomicLong(System.currentTimeMillis());
+    }
+
+    void addTotal(final long bytes) {
+        start();
+        total.addAndGet(bytes);
+    }
+
+    void addCopied(final long bytes) {
+        start();
+        copied.addAndGet(bytes);
+        final long now = System.currentTimeMillis();
+        final long last = lastReported.get();
+        if (now - last >= reportInterval && lastReported.compareAndSet(last, now)) {
+            logger.info(name + ": " + this);
+        }
+    }
+
+    private void start() {
+        if (started.get() == 0) {
+            final long now = System.currentTimeMillis();
+            if (started.compareAndSet(0, now)) {
+                lastReported.set(now);
+            }
+        }
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getCopied() {
+        return copied.get();
+    }
+
+    public long getBytesPerSecond() {
+        final long started = this.started.get();
+        final long elapsed = System.currentTimeMillis() - started;
+        return started == 0 || elapsed <= 0 ? 0 : getCopied() * 1000 / elapsed;
+    }
+
+    // -1 until there's been enough copied to tell
+    public long getSecondsLeft() {
+        final long rate = getBytesPerSecond();
+        return rate == 0 ? -1 : Math.max(0, getTotal() - getCopied()) / rate;
+    }
+
+    @Override
+    public String toString() {
+        final long total = getTotal();
+        final long copied = getCopied();
+        final long secondsLeft = getSecondsLeft();
+        return copied / MB + "MB of " + total / MB + "MB copied (" + (total == 0 ? 100 : copied * 100 / total) + "%) at "
+                + getBytesPerSecond() / MB + "MB/s" + (secondsLeft < 0 ? "" : ", " + formatDuration(secondsLeft) + " left");
+    }
+
+    private static String formatDuration(final long seconds) {
+        if (seconds >= 3600) {
+            return seconds / 3600 + "h" + seconds % 3600 / 60 + "m";
+        } else if (seconds >= 60) {
+            return seconds / 60 + "m" + seconds % 60 + "s";
+        }
+        return seconds + "s";
+    }
+}
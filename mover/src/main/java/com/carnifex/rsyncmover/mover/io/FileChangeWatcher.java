@@ -12,38 +12,69 @@ import org.apache.logging.log4j.Logger;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 public class FileChangeWatcher extends Thread {
 
     private static final Logger logger = LogManager.getLogger();
     private static final String DO_NOT_ADD_SUFFIX = ".filenamemovetest";
-    private static final int UPDATE_INTERVAL = 10000;
+    private static final int TICK_INTERVAL = 1000;
+    private static final int WHEEL_SIZE = 512;
+    // how long a file has to go without changing before we try to move it
+    private static final long MIN_INTERVAL = 1000 * 60;
+    // how soon to check again if a file hasn't changed but still can't be opened
+    private static final long RETRY_INTERVAL = 10000;
+    // after the change an event told us about has been seen, how long it has to stay unchanged
+    private static final long CONFIRM_INTERVAL = 3000;
+    // how long after a file is closed to check it, to give whatever closed it a chance to start writing again
+    private static final long CLOSE_SETTLE_INTERVAL = 2000;
+    private static final int READINESS_THREADS = 4;
+    // how long to wait for the checks started in a tick before handling whatever has finished
+    private static final long READINESS_WAIT = TICK_INTERVAL / 2;
+    // how long a single check can run before it's given up on and its thread replaced
+    private static final long READINESS_TIMEOUT = 30000;
 
-    private final Set<PathHolder> filesToMoveSoon;
+    private final Map<Path, PathHolder> filesToMoveSoon;
+    private final TimingWheel<Path> readinessTimers;
+    // checks that have been started but not handled yet
+    private final Map<Path, Evaluation> evaluating;
+    private final ReadinessPool readinessPool;
+    private final AtomicLong sequence;
     private final Set<Path> dontReAdd;
-    private final List<Mover> movers;
+    private final MoverMatcher moverMatcher;
     private final boolean isWindows;
+    private final long quietPeriod;
     private final MoverThread moverThread;
     private final SyncedFiles syncedFiles;
     private final Audit audit;
     private volatile boolean shutdown;
 
-    public FileChangeWatcher(final List<Mover> movers, final MoverThread moverThread, final SyncedFiles syncedFiles, final Audit audit) {
+    public FileChangeWatcher(final MoverMatcher moverMatcher, final MoverThread moverThread, final SyncedFiles syncedFiles, final Audit audit) {
         super("FileChangeWatcher");
-        this.filesToMoveSoon = ConcurrentHashMap.newKeySet();
+        this.filesToMoveSoon = new ConcurrentHashMap<>();
+        this.readinessTimers = new TimingWheel<>(TICK_INTERVAL, WHEEL_SIZE, System.currentTimeMillis());
+        this.evaluating = new ConcurrentHashMap<>();
+        this.readinessPool = new ReadinessPool("ReadinessThread", READINESS_THREADS, READINESS_TIMEOUT);
+        this.sequence = new AtomicLong(0);
         this.dontReAdd = ConcurrentHashMap.newKeySet();
         this.isWindows = Utilities.isRunningOnWindows();
-        this.movers = movers;
+        // on windows the rename check is what tells us the file is done with, so don't wait as long before trying it
+        this.quietPeriod = isWindows ? RETRY_INTERVAL : MIN_INTERVAL;
+        this.moverMatcher = moverMatcher;
         this.moverThread = moverThread;
         this.syncedFiles = syncedFiles;
         this.audit = audit;
@@ -56,10 +87,11 @@ public class FileChangeWatcher extends Thread {
     public void run() {
         for (;;) {
             try {
-                Thread.sleep(UPDATE_INTERVAL);
+                Thread.sleep(TICK_INTERVAL);
                 checkFilesToMove();
             } catch (InterruptedException e) {
                 logger.debug("Interrupted", e);
+                readinessPool.shutdownNow();
                 return;
             }
         }
@@ -75,59 +107,182 @@ public class FileChangeWatcher extends Thread {
             dontReAdd.remove(path);
             return;
         }
+        if (filesToMoveSoon.containsKey(path)) {
+            // recreated whilst we were waiting on it, treat it as a write
+            modified(path);
+            return;
+        }
         if (!syncedFiles.shouldDownload("file", path.toString())) {
             logger.info("Not re-moving file we've already moved: " + path.toString());
             return;
         }
+        final long now = System.currentTimeMillis();
         if (moveImmediately) {
             logger.info("Immediately moving " + path.toString());
-            filesToMoveSoon.add(new PathHolder(path, true));
+            filesToMoveSoon.put(path, new PathHolder(path, true, now));
+            readinessTimers.schedule(path, now);
             return;
         }
         logger.info("Registering " + path.toString());
-        filesToMoveSoon.add(new PathHolder(path, false));
+        filesToMoveSoon.put(path, new PathHolder(path, false, now));
+        readinessTimers.schedule(path, now + quietPeriod);
+    }
+
+    // called on write events, pushes back the time the path's pending file will next be checked
+    public void modified(final Path path) {
+        if (path.toString().endsWith(DO_NOT_ADD_SUFFIX)) {
+            return;
+        }
+        // the event could be for something inside a pending directory, so find the pending file it belongs to
+        final Path pending = findPending(path);
+        if (pending != null) {
+            final PathHolder holder = filesToMoveSoon.get(pending);
+            if (holder != null && !holder.isAlwaysReady) {
+                final long now = System.currentTimeMillis();
+                holder.touch(now);
+                readinessTimers.schedule(pending, now + quietPeriod);
+                logger.trace(path + " modified, delaying checking " + pending);
+            }
+        }
+    }
+
+    // called when something inside the watched directories has been closed after writing or moved into place, which
+    // is as good a sign as we get that it's finished with, so check it shortly rather than after the quiet period
+    public void closed(final Path path) {
+        final Path pending = findPending(path);
+        if (pending != null) {
+            final PathHolder holder = filesToMoveSoon.get(pending);
+            if (holder != null && !holder.isAlwaysReady) {
+                final long now = System.currentTimeMillis();
+                holder.touch(now);
+                readinessTimers.schedule(pending, now + CLOSE_SETTLE_INTERVAL);
+                logger.trace(path + " closed, checking " + pending + " soon");
+            }
+        }
+    }
+
+    private Path findPending(final Path path) {
+        for (Path p = path; p != null; p = p.getParent()) {
+            if (filesToMoveSoon.containsKey(p)) {
+                return p;
+            }
+        }
+        return null;
     }
 
-    private void checkFilesToMove() {
-        for (Iterator<PathHolder> iterator = filesToMoveSoon.iterator(); iterator.hasNext(); ) {
+    private void checkFilesToMove() throws InterruptedException {
+        final long now = System.currentTimeMillis();
+        // checks can block on slow disks, so run them on the pool and handle whichever have finished
+        final List<Evaluation> started = new ArrayList<>();
+        for (final Path path : readinessTimers.advance(now)) {
+            final PathHolder holder = filesToMoveSoon.get(path);
+            if (holder == null || evaluating.containsKey(path)) {
+                // anything still being checked is rescheduled once that check is handled
+                continue;
+            }
+            final Evaluation evaluation = new Evaluation(holder);
+            evaluation.check = readinessPool.submit(() -> holder.isReady(System.currentTimeMillis()));
+            evaluating.put(path, evaluation);
+            started.add(evaluation);
+        }
+        final long waitUntil = now + READINESS_WAIT;
+        for (final Evaluation evaluation : started) {
+            final long remaining = waitUntil - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
             try {
-                final PathHolder holder = iterator.next();
-                if (holder.isReady()) {
-                    final List<Mover> movers = this.movers.stream()
-                            .filter(mover -> mover.shouldSubmit(holder.get()))
-                            .peek(mover -> logger.debug("Selected possible mover {} for file {}", mover.getName(), holder.get()))
-                            .collect(Collectors.toList());
-                    if (movers.size() == 0) {
-                        logger.error("Unable to find mover for file " + holder.get().toString());
+                evaluation.check.get(remaining, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                break;
+            } catch (ExecutionException ignore) {
+                // handled with the result below
+            }
+        }
+        final List<Evaluation> finished = evaluating.values().stream()
+                .filter(evaluation -> evaluation.check.isFinished())
+                .sorted(Comparator.comparingLong(evaluation -> evaluation.holder.sequence))
+                .collect(Collectors.toList());
+        for (final Evaluation evaluation : finished) {
+            evaluating.remove(evaluation.holder.get());
+            if (evaluation.check.isAbandoned()) {
+                // the result of a check that was given up on isn't trusted, check it again now its thread is back
+                logger.info("Abandoned check of " + evaluation.holder.get() + " finished after "
+                        + (System.currentTimeMillis() - evaluation.check.getStarted()) + "ms");
+                readinessTimers.schedule(evaluation.holder.get(), System.currentTimeMillis() + RETRY_INTERVAL);
+                continue;
+            }
+            handle(evaluation);
+        }
+        abandonStuck();
+        logger.trace("Pending files: " + filesToMoveSoon.size());
+    }
+
+    private void handle(final Evaluation evaluation) throws InterruptedException {
+        final PathHolder holder = evaluation.holder;
+        final Path path = holder.get();
+        final long now = System.currentTimeMillis();
+        try {
+            if (evaluation.check.get()) {
+                final List<Mover> movers = moverMatcher.match(holder.get());
+                if (movers.size() == 0) {
+                    logger.error("Unable to find mover for file " + holder.get().toString());
+                } else {
+                    final Mover mover = chooseMover(movers);
+                    if (mover != null) {
+                        final Path target = mover.getTarget(holder.get());
+                        moverThread.submit(holder.get(), target, mover, holder.getSize());
+                        mover.notify(new NotificationEntry(Type.DOWNLOADED, holder.get().getFileName().toString()));
+                        syncedFiles.addDownloadedPath("file", holder.get().toString());
+                        syncedFiles.finished();
+                        dontReAdd.remove(holder.get());
                     } else {
-                        final Mover mover = chooseMover(movers);
-                        if (mover != null) {
-                            final Path target = mover.getTarget(holder.get());
-                            moverThread.submit(holder.get(), target, mover);
-                            mover.notify(new NotificationEntry(Type.DOWNLOADED, holder.get().getFileName().toString()));
-                            syncedFiles.addDownloadedPath("file", holder.get().toString());
-                            syncedFiles.finished();
-                            dontReAdd.remove(holder.get());
-                        } else {
-                            final String msg = "Found multiple movers (" +
-                                    movers.stream().map(Mover::getName).collect(Collectors.joining(", "))
-                                    + ") for file " + holder.get().toString() + "; not moving";
-                            logger.error(msg);
-                            audit.add(new ErrorEntry(msg));
-                        }
+                        final String msg = "Found multiple movers (" +
+                                movers.stream().map(Mover::getName).collect(Collectors.joining(", "))
+                                + ") for file " + holder.get().toString() + "; not moving";
+                        logger.error(msg);
+                        audit.add(new ErrorEntry(msg));
                     }
-                    iterator.remove();
                 }
-            } catch (NoFileException e) {
-                iterator.remove();
-                logger.warn("File " + e.getMessage() + " no longer exists, removing");
-            } catch (Exception e) {
+                filesToMoveSoon.remove(path);
+            } else if (!readinessTimers.isScheduled(path)) {
+                // a write event may have already rescheduled it
+                readinessTimers.schedule(path, holder.nextCheck(now));
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NoFileException) {
+                filesToMoveSoon.remove(path);
+                logger.warn("File " + e.getCause().getMessage() + " no longer exists, removing");
+            } else {
                 // could get exceptions from files being deleted by another process whilst we're watching them
-                logger.error("Exception whilst watching file", e);
+                logger.error("Exception whilst watching file", e.getCause());
+                readinessTimers.schedule(path, now + RETRY_INTERVAL);
             }
+        } catch (Exception e) {
+            logger.error("Exception whilst watching file", e);
+            readinessTimers.schedule(path, now + RETRY_INTERVAL);
+        }
+    }
 
+    private void abandonStuck() {
+        final long now = System.currentTimeMillis();
+        for (final Evaluation evaluation : evaluating.values()) {
+            // the path stays in evaluating until the thread comes back, so it isn't checked twice at once
+            if (readinessPool.abandonIfStuck(evaluation.check, now)) {
+                final String msg = "Checking whether " + evaluation.holder.get() + " is ready to move has taken more than "
+                        + READINESS_TIMEOUT + "ms, giving up on it and starting another thread for other files";
+                logger.warn(msg);
+                audit.add(new ErrorEntry(msg, null));
+            }
         }
-        logger.trace("Pending files: " + filesToMoveSoon.size());
+    }
+
+    // paths whose readiness check has run past the timeout and still hasn't finished
+    public List<Path> getStuckPaths() {
+        return evaluating.values().stream()
+                .filter(evaluation -> evaluation.check.isAbandoned())
+                .map(evaluation -> evaluation.holder.get())
+                .collect(Collectors.toList());
     }
 
     private Mover chooseMover(final List<Mover> movers) {
@@ -156,93 +311,113 @@ public class FileChangeWatcher extends Thread {
 
     private final class PathHolder {
 
-        private static final long MIN_INTERVAL = 1000 * 60;
-
         private final Path path;
         private final File file;
-        private long lastSize;
-        private long lastModified;
-        private long lastPolled;
-        private final Set<PathHolder> subDirectories;
         private final boolean isAlwaysReady;
+        // order the path was submitted in, so checks finishing together are handled in the order the files arrived
+        private final long sequence;
+        // count, size and last modified of everything under the path as of the last check
+        private Fingerprint lastFingerprint;
+        private volatile long lastChange;
+        // set when an event has told us about a change we haven't statted yet
+        private volatile boolean dirty;
 
-        PathHolder(final Path path, final boolean isAlwaysReady) {
+        PathHolder(final Path path, final boolean isAlwaysReady, final long now) {
             this.path = path;
             this.file = path.toFile();
-            this.lastSize = file.length();
-            this.lastModified = file.lastModified();
-            this.lastPolled = System.currentTimeMillis();
             this.isAlwaysReady = isAlwaysReady;
-            this.subDirectories = this.isAlwaysReady ? Collections.emptySet() : getSubFiles();
+            this.sequence = FileChangeWatcher.this.sequence.getAndIncrement();
+            this.lastFingerprint = isAlwaysReady || isWindows ? null : initialFingerprint();
+            this.lastChange = now;
+            this.dirty = false;
         }
 
-        private Set<PathHolder> getSubFiles() {
-            if (file.isDirectory()) {
-                final File[] files = file.listFiles();
-                if (files != null) {
-                    return Stream.of(files).map(f -> Paths.get(f.toURI()))
-                            .map(p -> new PathHolder(p, false)).collect(Collectors.toSet());
-                }
-            }
-            return Collections.emptySet();
+        void touch(final long now) {
+            this.lastChange = now;
+            this.dirty = true;
         }
 
-        public boolean isReady() {
+        public boolean isReady(final long now) {
             if (isAlwaysReady) {
                 return true;
             }
-            // check that no new files have been added
-            if (file.isDirectory()) {
-                subDirectories.addAll(getSubFiles());
+            if (isWindows) {
+                if (!file.exists()) {
+                    throw new NoFileException(file.toString());
+                }
+                return now - lastChange >= quietPeriod && tryRename();
             }
-            return ready() && subDirectories.stream().allMatch(PathHolder::ready);
-        }
-
-        private boolean ready() {
-            if (!file.exists()) {
+            final Fingerprint fingerprint = fingerprint();
+            if (fingerprint == null) {
                 throw new NoFileException(file.toString());
             }
-            if (isWindows) {
-                // attempting to rename the file is apparently the best way to find out if the file isn't being written to
-                // unfortunately this causes the FileWatchers to pick it up as a new file, so we initially rename it with a suffix
-                final File renamedFile = new File(path.toString() + DO_NOT_ADD_SUFFIX);
-                boolean notLocked = file.renameTo(renamedFile);
-                if (notLocked) {
-                    logger.trace(file.toString() + " not locked, moving");
-                    renamedFile.renameTo(file);
-                    // when renaming the file back to the original, store its name temporarily so we can not re-add it
-                    dontReAdd.add(path);
-                    return true;
+            final boolean changed = !fingerprint.equals(lastFingerprint);
+            lastFingerprint = fingerprint;
+            if (changed) {
+                logger.trace(file.getName() + " changed since last check");
+                if (dirty) {
+                    // this is the change the last event told us about, and the event's quiet period has already been
+                    // waited out - just make sure it doesn't change again shortly rather than waiting the whole period
+                    lastChange = now - quietPeriod + CONFIRM_INTERVAL;
+                } else {
+                    lastChange = now;
                 }
-                logger.trace(file.toString() + " locked, try again soon");
+                dirty = false;
+                return false;
+            }
+            dirty = false;
+            if (now - lastChange < quietPeriod) {
                 return false;
-            } else {
-                return checkModified();
             }
+            if (fingerprint.getCount() > 1) {
+                // opening every file in a tree costs far more than the walk, and on linux being able to open a file
+                // doesn't say anything about whether something else is writing to it anyway
+                logger.trace(file.getName() + " not changed, time passed");
+                return true;
+            }
+            logger.trace(file.getName() + " not changed, time passed, trying to open");
+            // try to open the file with write privileges just to be sure
+            return file.isDirectory() || tryOpen(file);
         }
 
-        private boolean checkModified() {
-            // rename trick doesnt work on windows, so poll the last modified and size
-            final long thisSize = file.length();
-            final long thisModified = file.lastModified();
-            final long thisPoll = System.currentTimeMillis();
-            if (thisSize == this.lastSize && thisModified == this.lastModified) {
-                final boolean overTime = thisPoll > lastPolled + MIN_INTERVAL;
-                logger.trace(file.getName() + " not changed, " + (overTime ? "time passed, trying to open" : "waiting for time"));
-                // try to open the file with write privileges just to be sure
-                return overTime && (file.isDirectory() ? tryOpenDirectory(file) : tryOpen(file));
-            } else {
-                logger.trace(file.getName() + " changed since last check");
+        long nextCheck(final long now) {
+            final long quiet = lastChange + quietPeriod;
+            return quiet > now ? quiet : now + RETRY_INTERVAL;
+        }
+
+        private Fingerprint initialFingerprint() {
+            try {
+                return fingerprint();
+            } catch (UncheckedIOException e) {
+                // the first check will report it
+                return null;
             }
-            this.lastSize = thisSize;
-            this.lastModified = thisModified;
-            this.lastPolled = thisPoll;
-            return false;
         }
 
-        private boolean tryOpenDirectory(final File f) {
-            final File[] files = f.listFiles();
-            return files != null && Stream.of(files).allMatch(file -> file.isDirectory() ? tryOpenDirectory(file) : tryOpen(file));
+        private Fingerprint fingerprint() {
+            try {
+                return Fingerprint.of(path);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private boolean tryRename() {
+            // attempting to rename the file is apparently the best way to find out if the file isn't being written to
+            // unfortunately this causes the FileWatchers to pick it up as a new file, so we initially rename it with a suffix
+            final File renamedFile = new File(path.toString() + DO_NOT_ADD_SUFFIX);
+            boolean notLocked = file.renameTo(renamedFile);
+            if (notLocked) {
+                logger.trace(file.toString() + " not locked, moving");
+                renamedFile.renameTo(file);
+                // when renaming the file back to the original, store its name temporarily so we can not re-add it
+                dontReAdd.add(path);
+                return true;
+            }
+            logger.trace(file.toString() + " locked, try again soon");
+            return false;
         }
 
         private boolean tryOpen(final File f) {
@@ -268,20 +443,18 @@ public class FileChangeWatcher extends Thread {
             return path;
         }
 
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            final PathHolder holder = (PathHolder) o;
-
-            return path.equals(holder.path);
-
+        // as of the last check, so the move queue doesn't have to walk the tree again. 0 if it wasn't walked
+        long getSize() {
+            return lastFingerprint != null ? lastFingerprint.getTotalSize() : 0;
         }
+    }
+
+    private static final class Evaluation {
+        private final PathHolder holder;
+        private ReadinessPool.Check<Boolean> check;
 
-        @Override
-        public int hashCode() {
-            return path.hashCode();
+        private Evaluation(final PathHolder holder) {
+            this.holder = holder;
         }
     }
 
@@ -1,17 +1,23 @@
 package com.carnifex.rsyncmover.mover.io;
 
 
+import com.carnifex.rsyncmover.Utilities;
 import com.carnifex.rsyncmover.audit.Audit;
 import com.carnifex.rsyncmover.audit.entry.ErrorEntry;
+import com.sun.nio.file.ExtendedWatchEventModifier;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 public class FileWatcher extends Thread {
@@ -20,12 +26,17 @@ public class FileWatcher extends Thread {
 
     private final Path dir;
     private final WatchService watcher;
+    // the directory each key was registered for, so nested events can be resolved to a full path
+    private final Map<WatchKey, Path> keys;
+    private final boolean isWindows;
     private final Set<String> dontWatch;
     private final FileChangeWatcher fileChangeWatcher;
     private final boolean lazyPolling;
+    private final InotifyWatcher inotifyWatcher;
     private final Audit audit;
 
-    public FileWatcher(final String dir, final Set<String> dontWatch, final FileChangeWatcher fileChangeWatcher, final boolean lazyPolling, final Audit audit) {
+    public FileWatcher(final String dir, final Set<String> dontWatch, final FileChangeWatcher fileChangeWatcher, final boolean lazyPolling,
+                       final boolean useInotify, final Audit audit) {
         super("FileWatcher - " + dir);
         this.dir = Paths.get(dir);
         if (!Files.exists(this.dir)) {
@@ -40,18 +51,31 @@ public class FileWatcher extends Thread {
         this.fileChangeWatcher = fileChangeWatcher;
         this.audit = audit;
         this.lazyPolling = lazyPolling;
+        this.keys = new ConcurrentHashMap<>();
+        this.isWindows = Utilities.isRunningOnWindows();
         if (!Files.exists(this.dir) || !Files.isWritable(this.dir)) {
             final String msg = "Watch folder " + dir + " does not exist or is unreadable, will not be watched";
             logger.error(msg);
             audit.add(new ErrorEntry(msg, null));
             watcher = null;
+            inotifyWatcher = null;
         } else if (lazyPolling) {
             this.watcher = null;
+            this.inotifyWatcher = null;
             logger.info("File watcher initialized lazily, watching " + dir);
+        } else if (useInotify && InotifyWatcher.isAvailable()) {
+            this.watcher = null;
+            this.inotifyWatcher = new InotifyWatcher(this.dir, dontWatch, fileChangeWatcher, this::submitExistingFiles, audit);
+            this.inotifyWatcher.start();
+            logger.info("File watcher initialized with inotify, watching " + dir);
         } else {
+            if (useInotify) {
+                logger.warn("Inotify requested but inotifywait could not be run, falling back to the default watcher for " + dir);
+            }
+            this.inotifyWatcher = null;
             try {
                 this.watcher = FileSystems.getDefault().newWatchService();
-                this.dir.register(watcher, ENTRY_CREATE);
+                registerAll(this.dir);
                 this.start();
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -74,52 +98,113 @@ public class FileWatcher extends Thread {
                 logger.debug("Interrupted exception", e);
                 return;
             }
+            final Path keyDir = keys.get(key);
+            if (keyDir == null) {
+                key.cancel();
+                continue;
+            }
 
             for (final WatchEvent<?> event: key.pollEvents()) {
                 final WatchEvent.Kind<?> kind = event.kind();
 
                 if (kind == OVERFLOW) {
+                    reconcile();
                     continue;
                 }
 
                 @SuppressWarnings("unchecked")
                 final WatchEvent<Path> ev = (WatchEvent<Path>)event;
-                final Path filename = ev.context();
-
-                final Path absolutePath = toAbsolute(filename);
-                if (!dontWatch.contains(absolutePath.toString())) {
+                final Path absolutePath = keyDir.resolve(ev.context());
+                if (dontWatch.contains(absolutePath.toString())) {
+                    continue;
+                }
+                if (kind == ENTRY_CREATE && !isWindows && Files.isDirectory(absolutePath, LinkOption.NOFOLLOW_LINKS)) {
+                    // pick up anything written into the new directory before its watch was registered too
+                    registerAll(absolutePath);
+                }
+                if (kind == ENTRY_CREATE && dir.equals(absolutePath.getParent())) {
                     fileChangeWatcher.submit(absolutePath, false);
+                } else {
+                    // anything happening below the top level is a change to the top level file it's inside
+                    fileChangeWatcher.modified(absolutePath);
                 }
             }
 
-
             if (!key.reset()) {
-                final String msg = "FileWatcher key reset, folder no longer watchable";
-                logger.error(msg);
-                audit.add(new ErrorEntry(msg, null));
-                break;
+                keys.remove(key);
+                if (keyDir.equals(dir)) {
+                    final String msg = "FileWatcher key reset, folder no longer watchable";
+                    logger.error(msg);
+                    audit.add(new ErrorEntry(msg, null));
+                    break;
+                }
+                // a subdirectory was deleted or moved off the filesystem
+                logger.trace("Stopped watching " + keyDir);
+            } else if (!keyDir.equals(dir) && !Files.isDirectory(keyDir)) {
+                // moved within the filesystem, so the watch has followed it somewhere we don't care about
+                key.cancel();
+                keys.remove(key);
             }
         }
+        keys.keySet().forEach(WatchKey::cancel);
+        keys.clear();
+    }
+
+    private void registerAll(final Path start) {
+        try {
+            if (isWindows) {
+                // windows can watch a whole tree from the root, and watching each subdirectory would hold handles that
+                // stop them being renamed
+                if (start.equals(dir)) {
+                    keys.put(dir.register(watcher, new WatchEvent.Kind<?>[] {ENTRY_CREATE, ENTRY_MODIFY}, ExtendedWatchEventModifier.FILE_TREE), dir);
+                }
+                return;
+            }
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attrs) throws IOException {
+                    // registering an already watched directory gives back the same key
+                    keys.put(directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY), directory);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                    // could have been moved or deleted whilst we were walking
+                    logger.debug("Unable to watch " + file, exc);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Error registering watches under " + start, e);
+        }
+    }
+
+    // events were dropped, so we can't know what changed - rewatch the tree and resubmit everything at the top level,
+    // which also pushes back the check on anything already pending in case the lost events were writes to it
+    private void reconcile() {
+        logger.warn("Too many file events in " + dir + ", rescanning");
+        keys.entrySet().removeIf(entry -> {
+            if (!entry.getKey().isValid() || !Files.isDirectory(entry.getValue())) {
+                entry.getKey().cancel();
+                return true;
+            }
+            return false;
+        });
+        registerAll(dir);
+        submitExistingFiles();
     }
 
     public boolean isActive() {
-        return watcher != null || lazyPolling;
+        return watcher != null || lazyPolling || inotifyWatcher != null;
     }
 
 
     public void shutdown() {
         this.interrupt();
-    }
-
-    // horrible dirty hack to get around having relative paths from the watch service
-    private Path toAbsolute(final Path filename) {
-        final String newPath = dir.toString() + File.separator + filename.toString();
-        try {
-            return Paths.get(newPath);
-        } catch (Exception e) {
-            return filename;
+        if (inotifyWatcher != null) {
+            inotifyWatcher.shutdown();
         }
-
     }
 
     public void submitExistingFiles() {
@@ -0,0 +1,93 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// summary of a file or directory tree taken in a single walk - if anything inside is added, removed, grows, shrinks or
+// is written to, at least one of these will change
+public final class Fingerprint {
+
+    private final long count;
+    private final long totalSize;
+    private final long maxModified;
+
+    private Fingerprint(final long count, final long totalSize, final long maxModified) {
+        this.count = count;
+        this.totalSize = totalSize;
+        this.maxModified = maxModified;
+    }
+
+    public static Fingerprint of(final Path path) throws IOException {
+        final long[] totals = new long[3];
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                // directory times change when entries are created, renamed or deleted
+                add(attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                add(attrs);
+                totals[1] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) throws IOException {
+                if (file.equals(path)) {
+                    throw exc;
+                }
+                // deleted whilst we were walking, which the count will reflect
+                return FileVisitResult.CONTINUE;
+            }
+
+            private void add(final BasicFileAttributes attrs) {
+                totals[0]++;
+                totals[2] = Math.max(totals[2], attrs.lastModifiedTime().toMillis());
+            }
+        });
+        return new Fingerprint(totals[0], totals[1], totals[2]);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getMaxModified() {
+        return maxModified;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final Fingerprint that = (Fingerprint) o;
+
+        return count == that.count && totalSize == that.totalSize && maxModified == that.maxModified;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (count ^ (count >>> 32));
+        result = 31 * result + (int) (totalSize ^ (totalSize >>> 32));
+        result = 31 * result + (int) (maxModified ^ (maxModified >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return count + " entries, " + totalSize + " bytes, last modified " + maxModified;
+    }
+}
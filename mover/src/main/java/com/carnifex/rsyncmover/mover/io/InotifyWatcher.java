@@ -0,0 +1,151 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import com.carnifex.rsyncmover.Utilities;
+import com.carnifex.rsyncmover.audit.Audit;
+import com.carnifex.rsyncmover.audit.entry.ErrorEntry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// watches a directory tree with inotify through inotifywait, as java's watch service has no close events and only
+// watches a single directory. files are handed to the file change watcher as soon as whatever was writing them closes
+// them, rather than after they've been quiet for a while
+public class InotifyWatcher extends Thread {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final String INOTIFYWAIT = "inotifywait";
+    private static final String WATCHES_ESTABLISHED = "Watches established.";
+    private static final Pattern EVENTS = Pattern.compile("[A-Z_,]+");
+    private static final long RESTART_DELAY = 10000;
+
+    private final Path dir;
+    private final Set<String> dontWatch;
+    private final FileChangeWatcher fileChangeWatcher;
+    private final Runnable rescan;
+    private final Audit audit;
+    private volatile Process process;
+    private volatile boolean running;
+
+    public InotifyWatcher(final Path dir, final Set<String> dontWatch, final FileChangeWatcher fileChangeWatcher,
+                          final Runnable rescan, final Audit audit) {
+        super("InotifyWatcher - " + dir);
+        this.dir = dir;
+        this.dontWatch = dontWatch;
+        this.fileChangeWatcher = fileChangeWatcher;
+        this.rescan = rescan;
+        this.audit = audit;
+        this.running = true;
+    }
+
+    public static boolean isAvailable() {
+        if (!Utilities.isRunningOnLinux()) {
+            return false;
+        }
+        try {
+            final Process process = new ProcessBuilder(INOTIFYWAIT, "--help").redirectErrorStream(true).start();
+            process.getInputStream().close();
+            process.waitFor();
+            return true;
+        } catch (IOException e) {
+            logger.debug("Could not run " + INOTIFYWAIT, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                process = new ProcessBuilder(INOTIFYWAIT, "-m", "-r", "-e", "create", "-e", "close_write", "-e", "moved_to",
+                        "--format", "%e %w%f", dir.toString()).redirectErrorStream(true).start();
+                try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        handle(line);
+                    }
+                }
+                process.waitFor();
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Error reading from " + INOTIFYWAIT + " watching " + dir, e);
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Interrupted exception", e);
+            } finally {
+                if (process != null) {
+                    process.destroy();
+                }
+            }
+            if (!running) {
+                return;
+            }
+            final String msg = INOTIFYWAIT + " watching " + dir + " stopped unexpectedly, restarting in " + RESTART_DELAY + "ms";
+            logger.error(msg);
+            audit.add(new ErrorEntry(msg, null));
+            try {
+                Thread.sleep(RESTART_DELAY);
+            } catch (InterruptedException e) {
+                logger.debug("Interrupted exception", e);
+                return;
+            }
+        }
+    }
+
+    private void handle(final String line) {
+        if (WATCHES_ESTABLISHED.equals(line)) {
+            // anything that turned up before the watches were set up (or while they were down) will never get an event
+            logger.info("Inotify watches established on " + dir);
+            rescan.run();
+            return;
+        }
+        final int split = line.indexOf(' ');
+        if (split <= 0 || !EVENTS.matcher(line.substring(0, split)).matches()) {
+            // setting up messages and errors, for eg running out of watches
+            logger.info(INOTIFYWAIT + ": " + line);
+            return;
+        }
+        final Set<String> events = new HashSet<>(Arrays.asList(line.substring(0, split).split(",")));
+        final Path path;
+        try {
+            path = Paths.get(line.substring(split + 1));
+        } catch (Exception e) {
+            logger.warn("Could not parse path from " + INOTIFYWAIT + " event " + line, e);
+            return;
+        }
+        if (dontWatch.contains(path.toString())) {
+            return;
+        }
+        final boolean topLevel = dir.equals(path.getParent());
+        if (topLevel && (events.contains("CREATE") || events.contains("MOVED_TO"))) {
+            fileChangeWatcher.submit(path, false);
+        } else if (events.contains("CREATE")) {
+            fileChangeWatcher.modified(path);
+        }
+        if (events.contains("CLOSE_WRITE") || events.contains("MOVED_TO")) {
+            fileChangeWatcher.closed(path);
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        final Process current = process;
+        if (current != null) {
+            current.destroy();
+        }
+        this.interrupt();
+    }
+}
@@ -0,0 +1,295 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// the moves that have been queued but haven't finished. each change is appended to the journal file and synced before
+// the move carries on, so a move that's cut off by a restart or crash can be picked up again from the last thing it
+// finished. the file is rewritten with only the unfinished moves when it's opened and whenever they've all finished.
+// without a location the journal is only kept in memory
+public class MoveJournal {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final String SEPARATOR = "\t";
+    private static final String QUEUED = "queued";
+    private static final String STARTED = "started";
+    private static final String COPIED = "copied";
+    private static final String STAGE = "stage";
+    private static final String FINISHED = "finished";
+
+    private final Path location;
+    private final Map<Long, Entry> entries;
+    private long nextId;
+    private FileChannel channel;
+
+    public MoveJournal(final Path location) {
+        this.location = location;
+        this.entries = new LinkedHashMap<>();
+        this.nextId = 1;
+        if (location != null) {
+            try {
+                read();
+                rewrite();
+                if (!entries.isEmpty()) {
+                    logger.info("Move journal " + location + " has " + entries.size() + " unfinished moves");
+                }
+            } catch (IOException e) {
+                logger.error("Could not open move journal " + location + ", queued moves will not survive a restart", e);
+                close();
+            }
+        }
+    }
+
+    public synchronized List<Entry> getUnfinished() {
+        return new ArrayList<>(entries.values());
+    }
+
+    // returns the new move's id, or -1 if there's already an unfinished move from the same path
+    synchronized long queued(final Path from, final Path to, final String mover, final String operator) {
+        if (entries.values().stream().anyMatch(entry -> entry.from.equals(from))) {
+            return -1;
+        }
+        final Entry entry = new Entry(nextId++, from, to, mover, operator);
+        entries.put(entry.id, entry);
+        write(QUEUED, entry.id, from, to, mover, operator);
+        return entry.id;
+    }
+
+    synchronized void started(final long id, final boolean targetExisted) {
+        final Entry entry = entries.get(id);
+        if (entry != null) {
+            entry.started = true;
+            entry.targetExisted = targetExisted;
+            write(STARTED, id, targetExisted);
+        }
+    }
+
+    // a move that had to copy has finished copying and is about to delete what it copied from
+    synchronized void copied(final long id, final Path from, final Path to) {
+        final Entry entry = entries.get(id);
+        if (entry != null) {
+            entry.copiedFrom = from;
+            entry.copiedTo = to;
+            write(COPIED, id, from, to);
+        }
+    }
+
+    synchronized void stageCompleted(final long id, final Path result) {
+        final Entry entry = entries.get(id);
+        if (entry != null) {
+            entry.stages.add(result);
+            write(STAGE, id, result);
+        }
+    }
+
+    synchronized void finished(final long id) {
+        if (entries.remove(id) == null) {
+            return;
+        }
+        if (entries.isEmpty() && channel != null) {
+            // nothing left to recover, so start the file again rather than let it grow forever
+            try {
+                rewrite();
+            } catch (IOException e) {
+                logger.error("Could not rewrite move journal " + location, e);
+                close();
+            }
+        } else {
+            write(FINISHED, id);
+        }
+    }
+
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Error closing move journal " + location, e);
+            }
+            channel = null;
+        }
+    }
+
+    private void write(final Object... fields) {
+        final String line = format(fields);
+        if (channel == null || line == null) {
+            return;
+        }
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            logger.error("Could not write to move journal " + location + ", queued moves will not survive a restart", e);
+            close();
+        }
+    }
+
+    private static String format(final Object... fields) {
+        final String line = Arrays.stream(fields).map(String::valueOf).collect(Collectors.joining(SEPARATOR));
+        if (line.indexOf('\n') >= 0 || line.indexOf('\r') >= 0 || line.split(SEPARATOR, -1).length != fields.length) {
+            logger.warn("Cannot journal " + line + " as it contains tabs or line breaks, it won't be recovered after a restart");
+            return null;
+        }
+        return line + "\n";
+    }
+
+    private void read() throws IOException {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(location, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        for (final String line : lines) {
+            final String[] fields = line.split(SEPARATOR, -1);
+            try {
+                final long id = Long.parseLong(fields[1]);
+                nextId = Math.max(nextId, id + 1);
+                switch (fields[0]) {
+                    case QUEUED:
+                        entries.put(id, new Entry(id, Paths.get(fields[2]), Paths.get(fields[3]), fields[4], fields[5]));
+                        break;
+                    case STARTED:
+                        entries.get(id).started = true;
+                        entries.get(id).targetExisted = Boolean.parseBoolean(fields[2]);
+                        break;
+                    case COPIED:
+                        entries.get(id).copiedFrom = Paths.get(fields[2]);
+                        entries.get(id).copiedTo = Paths.get(fields[3]);
+                        break;
+                    case STAGE:
+                        entries.get(id).stages.add(Paths.get(fields[2]));
+                        break;
+                    case FINISHED:
+                        entries.remove(id);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(fields[0]);
+                }
+            } catch (RuntimeException e) {
+                // most likely the last line, cut off part way through being written
+                logger.warn("Ignoring unreadable line in move journal " + location + ": " + line, e);
+            }
+        }
+    }
+
+    // writes out just the unfinished moves, replacing the old file in one go so a crash part way leaves one or the other
+    private void rewrite() throws IOException {
+        close();
+        final StringBuilder unfinished = new StringBuilder();
+        for (final Entry entry : entries.values()) {
+            append(unfinished, format(QUEUED, entry.id, entry.from, entry.to, entry.mover, entry.operator));
+            if (entry.started) {
+                append(unfinished, format(STARTED, entry.id, entry.targetExisted));
+            }
+            if (entry.copiedTo != null) {
+                append(unfinished, format(COPIED, entry.id, entry.copiedFrom, entry.copiedTo));
+            }
+            entry.stages.stream().skip(1).forEach(stage -> append(unfinished, format(STAGE, entry.id, stage)));
+        }
+        final Path temp = location.resolveSibling(location.getFileName() + ".tmp");
+        try (final FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(unfinished.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                tempChannel.write(buffer);
+            }
+            tempChannel.force(false);
+        }
+        Files.move(temp, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(location, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void append(final StringBuilder builder, final String line) {
+        if (line != null) {
+            builder.append(line);
+        }
+    }
+
+    public static final class Entry {
+        private final long id;
+        private final Path from;
+        private final Path to;
+        private final String mover;
+        private final String operator;
+        private final List<Path> stages;
+        private boolean started;
+        private boolean targetExisted;
+        private Path copiedFrom;
+        private Path copiedTo;
+
+        private Entry(final long id, final Path from, final Path to, final String mover, final String operator) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.mover = mover;
+            this.operator = operator;
+            this.stages = new ArrayList<>();
+            this.stages.add(from);
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Path getFrom() {
+            return from;
+        }
+
+        public Path getTo() {
+            return to;
+        }
+
+        public String getMover() {
+            return mover;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        // results of each stage that finished, starting with the path it was moved from
+        public List<Path> getStages() {
+            return Collections.unmodifiableList(new ArrayList<>(stages));
+        }
+
+        public boolean isStarted() {
+            return started;
+        }
+
+        public boolean didTargetExist() {
+            return targetExisted;
+        }
+
+        // set if the move had copied everything and was deleting the source when it was cut off, null otherwise
+        public Path getCopiedFrom() {
+            return copiedFrom;
+        }
+
+        public Path getCopiedTo() {
+            return copiedTo;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// a bounded queue of moves that hands out the one from the highest priority mover first, then the smallest or oldest
+// as configured. anything left waiting is bumped up a priority for every agingInterval it's waited, so a big move
+// can't be held back forever by smaller ones. lanes only hold a few thousand moves at most, so picking the next one
+// just looks through them all rather than keeping a heap whose order would go stale as things age
+public final class MoveQueue<E> {
+
+    public enum Order {
+        // smallest first, so subtitles and single episodes aren't stuck behind a whole season
+        SMALLEST,
+        // in the order they were queued
+        OLDEST
+    }
+
+    private final int capacity;
+    private final Order order;
+    private final long agingInterval;
+    private final LongSupplier clock;
+    private final List<Node<E>> nodes;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private long sequence;
+
+    MoveQueue(final int capacity, final Order order, final long agingInterval) {
+        this(capacity, order, agingInterval, System::currentTimeMillis);
+    }
+
+    // visible for testing
+    MoveQueue(final int capacity, final Order order, final long agingInterval, final LongSupplier clock) {
+        this.capacity = capacity;
+        this.order = order;
+        this.agingInterval = agingInterval;
+        this.clock = clock;
+        this.nodes = new ArrayList<>();
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+    }
+
+    // waits for room if the queue is full
+    void put(final E item, final int priority, final long size) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (nodes.size() >= capacity) {
+                notFull.await();
+            }
+            nodes.add(new Node<>(item, priority, size, clock.getAsLong(), sequence++));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the next move to make, or null if nothing was queued within the timeout
+    E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (nodes.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            final long now = clock.getAsLong();
+            final Node<E> next = nodes.stream().min(comparator(now)).orElseThrow(IllegalStateException::new);
+            nodes.remove(next);
+            notFull.signal();
+            return next.item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private Comparator<Node<E>> comparator(final long now) {
+        final Comparator<Node<E>> byPriority = Comparator.comparingLong(node -> -effectivePriority(node, now));
+        final Comparator<Node<E>> byOrder = order == Order.SMALLEST
+                ? byPriority.thenComparingLong(node -> node.size)
+                : byPriority;
+        return byOrder.thenComparingLong(node -> node.sequence);
+    }
+
+    private long effectivePriority(final Node<E> node, final long now) {
+        if (agingInterval <= 0) {
+            return node.priority;
+        }
+        return node.priority + Math.max(0, now - node.queuedAt) / agingInterval;
+    }
+
+    private static final class Node<E> {
+        private final E item;
+        private final int priority;
+        private final long size;
+        private final long queuedAt;
+        private final long sequence;
+
+        private Node(final E item, final int priority, final long size, final long queuedAt, final long sequence) {
+            this.item = item;
+            this.priority = priority;
+            this.size = size;
+            this.queuedAt = queuedAt;
+            this.sequence = sequence;
+        }
+    }
+}
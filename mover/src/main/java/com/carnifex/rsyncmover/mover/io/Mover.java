@@ -29,8 +29,8 @@ public class Mover {
     private static final int DEFAULT_PRIORITY = 0;
 
     private final String name;
-    private final List<Pattern> patterns;
-    private final List<Pattern> negativePatterns;
+    private final PatternSet patterns;
+    private final PatternSet negativePatterns;
     private final List<String> extensions;
     private final boolean partialMatch;
     private final Target target;
@@ -40,12 +40,11 @@ public class Mover {
 
     public Mover(final com.carnifex.rsyncmover.beans.RsyncMover.Movers.Mover mover, final Audit audit) {
         this.name = mover.getName();
-        this.patterns = mover.getPatterns() != null ? mover.getPatterns().getPattern().stream().map(Pattern::compile).collect(Collectors.toList())
-                : Collections.emptyList();
-        this.negativePatterns = mover.getDontMatchPatterns() != null ? mover.getDontMatchPatterns().getPattern()
-                .stream().map(Pattern::compile).collect(Collectors.toList()) : Collections.emptyList();
-        this.extensions = mover.getExtensions() != null ? mover.getExtensions().getExtension().stream().map(String::toLowerCase).collect(Collectors.toList()) : Collections.emptyList();
         this.partialMatch = mover.isPartialMatch() != null ? mover.isPartialMatch() : false;
+        this.patterns = new PatternSet(mover.getPatterns() != null ? mover.getPatterns().getPattern() : Collections.emptyList(), partialMatch);
+        this.negativePatterns = new PatternSet(mover.getDontMatchPatterns() != null ? mover.getDontMatchPatterns().getPattern()
+                : Collections.emptyList(), partialMatch);
+        this.extensions = mover.getExtensions() != null ? mover.getExtensions().getExtension().stream().map(String::toLowerCase).collect(Collectors.toList()) : Collections.emptyList();
         this.target = new Target(mover.getTargetDirectory());
         this.operator = MoveOperator.create(mover.getMoveOperators() != null ? mover.getMoveOperators().getMoveOperator() : Collections.emptyList(), audit);
         this.priority = mover.getPriority() != null ? mover.getPriority() : DEFAULT_PRIORITY;
@@ -75,34 +74,46 @@ public class Mover {
             return filtered != 0 && (partialMatch || original.length == filtered);
         }
         final String name = file.getName().toLowerCase();
-        final boolean matchesPatterns = patterns.isEmpty()
-                || patterns.stream()
-                .anyMatch(pattern -> {
-                    final Matcher matcher = pattern.matcher(name);
-                    final boolean matches = partialMatch ? matcher.find() : matcher.matches();
-                    final String msg = String.format("%s: %s matched filename %s against regex %s", this.getName(), matches ? "Positively" : "Negatively", name, pattern);
-                    if (matches) {
-                        logger.debug(msg);
-                    } else {
-                        logger.trace(msg);
-                    }
-                    return matches;
-                });
-        final boolean doesntMatchNegativePatterns = negativePatterns.isEmpty()
-                || negativePatterns.stream()
-                .noneMatch(pattern -> {
-                    final Matcher matcher = pattern.matcher(name);
-                    final boolean matches = partialMatch ? matcher.find() : matcher.matches();
-                    final String msg = String.format("%s: %s matched filename %s against negative regex %s", this.getName(), matches ? "Positively" : "Negatively", name, pattern);
-                    if (matches) {
-                        logger.trace(msg);
-                    } else {
-                        logger.debug(msg);
-                    }
-                    return matches;
-                });
-        final boolean extensionsCorrect = extensions.isEmpty() || extensions.stream().anyMatch(name::endsWith);
-        return matchesPatterns && extensionsCorrect && doesntMatchNegativePatterns;
+        return extensionMatches(name) && matchesName(name);
+    }
+
+    boolean extensionMatches(final String lowerCaseName) {
+        return extensions.isEmpty() || extensions.stream().anyMatch(lowerCaseName::endsWith);
+    }
+
+    // checks the regexes only, expects an already lower cased file name
+    boolean matchesName(final String lowerCaseName) {
+        if (!patterns.isEmpty()) {
+            // parameterised so nothing is formatted unless the level is enabled
+            if (patterns.matches(lowerCaseName)) {
+                logger.debug("{}: Positively matched filename {} against regex {}", name, lowerCaseName, patterns);
+            } else {
+                logger.trace("{}: Negatively matched filename {} against regex {}", name, lowerCaseName, patterns);
+                return false;
+            }
+        }
+        if (!negativePatterns.isEmpty()) {
+            if (negativePatterns.matches(lowerCaseName)) {
+                logger.trace("{}: Positively matched filename {} against negative regex {}", name, lowerCaseName, negativePatterns);
+                return false;
+            } else {
+                logger.debug("{}: Negatively matched filename {} against negative regex {}", name, lowerCaseName, negativePatterns);
+            }
+        }
+        return true;
+    }
+
+    List<String> getExtensions() {
+        return extensions;
+    }
+
+    boolean isPartialMatch() {
+        return partialMatch;
+    }
+
+    // movers with equal keys match exactly the same names
+    List<Object> getMatchKey() {
+        return Arrays.asList(patterns, negativePatterns);
     }
 
     public MoveOperator getMoveOperator() {
@@ -123,46 +134,45 @@ public class Mover {
         private static final Pattern regexRegex = Pattern.compile("%(.+?)%(.+?)%");
 
         private final List<String> partialPaths;
+        // the partial paths compiled once, so building a path is just running each segment in turn
+        private final List<Segment> segments;
+        private final boolean hasDates;
 
         public Target(final String directory) {
             partialPaths = new ArrayList<>();
 
             resolvePath(directory);
+            segments = partialPaths.stream().map(Target::compile).collect(Collectors.toList());
+            hasDates = segments.stream().anyMatch(segment -> segment instanceof DateSegment);
             // test the regexes
             getPath("test.file");
         }
 
         public String getPath(final String filename) {
-            if (partialPaths.size() == 1) {
+            if (segments.size() == 1) {
                 return partialPaths.get(0) + File.separator + filename;
             }
 
-            return partialPaths.stream()
-                    .map(path -> {
-                        if (path.startsWith("%")) {
-                            final List<String> regexPair = getRegexPair(path);
-                            final Matcher matcher = Pattern.compile(regexPair.get(0)).matcher(filename);
-                            if (matcher.find()) {
-                                String result = regexPair.get(1);
-                                for (int i = 1; i <= matcher.groupCount(); i++) {
-                                    result = result.replaceFirst(String.valueOf(i), matcher.group(i));
-                                }
-                                return result;
-                            }
-                            return "";
-                        }
-                        return path;
-                    })
-                    .map(path -> {
-                        if (path.startsWith("$")) {
-                            return LocalDateTime.now().format(DateTimeFormatter.ofPattern(path.substring(1, path.length() - 1)));
-                        }
-                        return path;
-                    })
-                    .collect(Collectors.joining()) + File.separator + filename;
+            final LocalDateTime now = hasDates ? LocalDateTime.now() : null;
+            final StringBuilder path = new StringBuilder();
+            for (final Segment segment : segments) {
+                segment.append(path, filename, now);
+            }
+            return path.append(File.separator).append(filename).toString();
+        }
+
+        private static Segment compile(final String path) {
+            if (path.startsWith("%")) {
+                final List<String> regexPair = getRegexPair(path);
+                return new RegexSegment(Pattern.compile(regexPair.get(0)), regexPair.get(1));
+            }
+            if (path.startsWith("$")) {
+                return new DateSegment(DateTimeFormatter.ofPattern(path.substring(1, path.length() - 1)));
+            }
+            return (builder, filename, now) -> builder.append(path);
         }
 
-        private List<String> getRegexPair(final String input) {
+        private static List<String> getRegexPair(final String input) {
             final Matcher matcher = regexRegex.matcher(input);
             if (matcher.matches()) {
                 return Arrays.asList(matcher.group(1), matcher.group(2));
@@ -185,6 +195,51 @@ public class Mover {
             }
         }
 
+        private interface Segment {
+            void append(StringBuilder builder, String filename, LocalDateTime now);
+        }
+
+        private static final class RegexSegment implements Segment {
+            private final Pattern pattern;
+            private final String replacement;
+
+            private RegexSegment(final Pattern pattern, final String replacement) {
+                this.pattern = pattern;
+                this.replacement = replacement;
+            }
+
+            @Override
+            public void append(final StringBuilder builder, final String filename, final LocalDateTime now) {
+                final Matcher matcher = pattern.matcher(filename);
+                if (!matcher.find()) {
+                    return;
+                }
+                // each group number is replaced in turn, first occurrence only. the group is inserted as is rather
+                // than as a replacement string, so names with $ or \ in them don't break it
+                String result = replacement;
+                for (int i = 1; i <= matcher.groupCount(); i++) {
+                    final String number = String.valueOf(i);
+                    final int index = result.indexOf(number);
+                    if (index >= 0) {
+                        final String group = matcher.group(i);
+                        result = result.substring(0, index) + (group != null ? group : "") + result.substring(index + number.length());
+                    }
+                }
+                builder.append(result);
+            }
+        }
+
+        private static final class DateSegment implements Segment {
+            private final DateTimeFormatter formatter;
+
+            private DateSegment(final DateTimeFormatter formatter) {
+                this.formatter = formatter;
+            }
 
+            @Override
+            public void append(final StringBuilder builder, final String filename, final LocalDateTime now) {
+                builder.append(now.format(formatter));
+            }
+        }
     }
 }
@@ -0,0 +1,273 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// finds every mover that would accept a path in one pass, rather than asking each mover in turn. extensions are looked
+// up by suffix in a single map, movers with identical regexes (for eg the ones inheriting the defaults) only have them
+// run once per name, and directories are only listed once however many movers there are
+public class MoverMatcher {
+
+    private static final Logger logger = LogManager.getLogger();
+    // if this many directories are cached, start again rather than tracking which are still in use
+    private static final int MAX_CACHED_DIRECTORIES = 10000;
+
+    private final List<Mover> movers;
+    // which of the distinct regex groups each mover uses, and a mover that can be asked to match for that group
+    private final int[] groups;
+    private final List<Mover> groupMatchers;
+    // movers accepting each extension, and all the extension lengths so a name only needs a lookup per length
+    private final Map<String, BitSet> extensions;
+    private final int[] extensionLengths;
+    private final BitSet anyExtension;
+    private final BitSet partialMatch;
+    private final BitSet allMovers;
+    // what each directory's files matched, valid for as long as the directory's last modified and entry count are the
+    // same, which is as long as nothing's been created, deleted or renamed in it
+    private final Map<Path, DirectoryMatch> directoryMatches;
+
+    public MoverMatcher(final List<Mover> movers) {
+        this.movers = Collections.unmodifiableList(new ArrayList<>(movers));
+        this.groups = new int[movers.size()];
+        this.groupMatchers = new ArrayList<>();
+        this.extensions = new HashMap<>();
+        this.anyExtension = new BitSet(movers.size());
+        this.partialMatch = new BitSet(movers.size());
+        final Map<List<Object>, Integer> groupIndexes = new HashMap<>();
+        final TreeSet<Integer> lengths = new TreeSet<>();
+        for (int i = 0; i < movers.size(); i++) {
+            final Mover mover = movers.get(i);
+            groups[i] = groupIndexes.computeIfAbsent(mover.getMatchKey(), ignore -> {
+                groupMatchers.add(mover);
+                return groupMatchers.size() - 1;
+            });
+            if (mover.getExtensions().isEmpty()) {
+                anyExtension.set(i);
+            }
+            for (final String extension : mover.getExtensions()) {
+                extensions.computeIfAbsent(extension, ignore -> new BitSet(movers.size())).set(i);
+                lengths.add(extension.length());
+            }
+            if (mover.isPartialMatch()) {
+                partialMatch.set(i);
+            }
+        }
+        this.extensionLengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+        this.allMovers = new BitSet(movers.size());
+        this.allMovers.set(0, movers.size());
+        this.directoryMatches = new ConcurrentHashMap<>();
+    }
+
+    // movers accepting the path, in the order they were configured
+    public List<Mover> match(final Path path) {
+        final File file = path.toFile();
+        return toMovers(file.isDirectory() ? matchDirectory(file, allMovers) : matchName(file.getName().toLowerCase(), allMovers), path);
+    }
+
+    // matches a tree that's already been listed, for eg on a server, rather than one on the local disk
+    public List<Mover> match(final Listing listing) {
+        return toMovers(listing.isDirectory() ? matchListing(listing, allMovers) : matchName(listing.getName().toLowerCase(), allMovers),
+                listing.getName());
+    }
+
+    private List<Mover> toMovers(final BitSet matched, final Object matching) {
+        final List<Mover> result = new ArrayList<>(matched.cardinality());
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            result.add(movers.get(i));
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Movers " + result.stream().map(Mover::getName).collect(Collectors.joining(", "))
+                    + " matched " + matching);
+        }
+        return result;
+    }
+
+    public List<Mover> getMovers() {
+        return movers;
+    }
+
+    // a directory matches a mover if all of its contents do, or any of them for partial matchers. only the movers in
+    // candidates are checked, and each is dropped as soon as the result for it is known
+    private BitSet matchDirectory(final File dir, final BitSet candidates) {
+        final Path path = dir.toPath();
+        final String[] entries = dir.list();
+        if (entries == null) {
+            directoryMatches.remove(path);
+            return new BitSet();
+        }
+        final long modified = dir.lastModified();
+        DirectoryMatch cached = directoryMatches.get(path);
+        if (cached == null || cached.modified != modified || cached.entries != entries.length) {
+            cached = new DirectoryMatch(modified, entries.length, dir.listFiles());
+        }
+        final BitSet unevaluated = (BitSet) candidates.clone();
+        unevaluated.andNot(cached.evaluated);
+        if (!unevaluated.isEmpty()) {
+            cached = cached.evaluate(unevaluated);
+            if (directoryMatches.size() >= MAX_CACHED_DIRECTORIES) {
+                directoryMatches.clear();
+            }
+            directoryMatches.put(path, cached);
+        }
+
+        final BitSet matched = (BitSet) cached.fileMatches.clone();
+        matched.and(candidates);
+        // an empty directory doesn't match anything
+        if (entries.length == 0) {
+            return new BitSet();
+        }
+        // partial matchers that any file matched are decided, as are full matchers any file didn't
+        final BitSet undecided = (BitSet) candidates.clone();
+        final BitSet decidedPartial = (BitSet) matched.clone();
+        decidedPartial.and(partialMatch);
+        undecided.andNot(decidedPartial);
+        final BitSet failedFull = (BitSet) candidates.clone();
+        failedFull.andNot(partialMatch);
+        failedFull.andNot(matched);
+        undecided.andNot(failedFull);
+        for (final File subdirectory : cached.subdirectories) {
+            if (undecided.isEmpty()) {
+                break;
+            }
+            decide(undecided, matched, matchDirectory(subdirectory, undecided));
+        }
+        return matched;
+    }
+
+    private BitSet matchListing(final Listing dir, final BitSet candidates) {
+        final List<? extends Listing> children = dir.getChildren();
+        if (children.isEmpty()) {
+            return new BitSet();
+        }
+        // full matchers match until a child doesn't, partial ones don't until one does
+        final BitSet matched = (BitSet) candidates.clone();
+        matched.andNot(partialMatch);
+        final BitSet undecided = (BitSet) candidates.clone();
+        for (final Listing child : children) {
+            if (undecided.isEmpty()) {
+                break;
+            }
+            decide(undecided, matched, child.isDirectory() ? matchListing(child, undecided)
+                    : matchName(child.getName().toLowerCase(), undecided));
+        }
+        return matched;
+    }
+
+    // folds one child's matches into its directory's, deciding any mover the child settles
+    private void decide(final BitSet undecided, final BitSet matched, final BitSet childMatched) {
+        for (int i = undecided.nextSetBit(0); i >= 0; i = undecided.nextSetBit(i + 1)) {
+            if (partialMatch.get(i) && childMatched.get(i)) {
+                matched.set(i);
+                undecided.clear(i);
+            } else if (!partialMatch.get(i) && !childMatched.get(i)) {
+                matched.clear(i);
+                undecided.clear(i);
+            }
+        }
+    }
+
+    private BitSet matchName(final String name, final BitSet movers) {
+        final BitSet candidates = (BitSet) anyExtension.clone();
+        for (final int length : extensionLengths) {
+            if (length > name.length()) {
+                break;
+            }
+            final BitSet accepting = extensions.get(name.substring(name.length() - length));
+            if (accepting != null) {
+                candidates.or(accepting);
+            }
+        }
+        candidates.and(movers);
+        final Boolean[] groupResults = new Boolean[groupMatchers.size()];
+        final BitSet matched = new BitSet(this.movers.size());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final int group = groups[i];
+            if (groupResults[group] == null) {
+                groupResults[group] = groupMatchers.get(group).matchesName(name);
+            }
+            if (groupResults[group]) {
+                matched.set(i);
+            }
+        }
+        return matched;
+    }
+
+    // a file or directory whose contents have already been listed
+    public interface Listing {
+        String getName();
+
+        boolean isDirectory();
+
+        List<? extends Listing> getChildren();
+    }
+
+    // immutable, a re-evaluation for more movers makes a new one
+    private final class DirectoryMatch {
+        private final long modified;
+        private final int entries;
+        private final List<String> files;
+        private final List<File> subdirectories;
+        // movers the files have been checked against
+        private final BitSet evaluated;
+        // for partial matchers whether any file matched, for the rest whether every file did
+        private final BitSet fileMatches;
+
+        private DirectoryMatch(final long modified, final int entries, final File[] children) {
+            this.modified = modified;
+            this.entries = entries;
+            this.files = new ArrayList<>();
+            this.subdirectories = new ArrayList<>();
+            if (children != null) {
+                for (final File child : children) {
+                    if (child.isDirectory()) {
+                        subdirectories.add(child);
+                    } else {
+                        files.add(child.getName().toLowerCase());
+                    }
+                }
+            }
+            this.evaluated = new BitSet();
+            this.fileMatches = new BitSet();
+        }
+
+        private DirectoryMatch(final DirectoryMatch previous, final BitSet evaluated, final BitSet fileMatches) {
+            this.modified = previous.modified;
+            this.entries = previous.entries;
+            this.files = previous.files;
+            this.subdirectories = previous.subdirectories;
+            this.evaluated = evaluated;
+            this.fileMatches = fileMatches;
+        }
+
+        private DirectoryMatch evaluate(final BitSet movers) {
+            // full matchers start as matching and partial ones as not, until a file says otherwise
+            final BitSet result = (BitSet) movers.clone();
+            result.andNot(partialMatch);
+            final BitSet undecided = (BitSet) movers.clone();
+            for (final String file : files) {
+                if (undecided.isEmpty()) {
+                    break;
+                }
+                decide(undecided, result, matchName(file, undecided));
+            }
+            final BitSet newEvaluated = (BitSet) evaluated.clone();
+            newEvaluated.or(movers);
+            final BitSet newFileMatches = (BitSet) fileMatches.clone();
+            newFileMatches.or(result);
+            return new DirectoryMatch(this, newEvaluated, newFileMatches);
+        }
+    }
+}
@@ -1,16 +1,32 @@
 package com.carnifex.rsyncmover.mover.io;
 
 
+import java.io.IOException;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
 
 import com.carnifex.rsyncmover.audit.Audit;
 import com.carnifex.rsyncmover.audit.Type;
@@ -19,162 +35,682 @@ import com.carnifex.rsyncmover.audit.entry.ErrorEntry;
 import com.carnifex.rsyncmover.audit.entry.MovedEntry;
 import com.carnifex.rsyncmover.audit.entry.NotificationEntry;
 import com.carnifex.rsyncmover.mover.operators.MoveOperator;
+import com.carnifex.rsyncmover.mover.operators.Stages;
 import com.carnifex.rsyncmover.notifications.Notifier;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-public class MoverThread extends Thread {
+// hands moves out to lanes, one thread each. moves are grouped into lanes by the file stores they're moving between, so
+// moves on the same disks queue behind each other rather than thrashing them, while a move between other disks doesn't
+// have to wait for them. within a lane, moves are made in order of their mover's priority then as queueOrder says.
+// only a move's first operator runs in its lane; each operator after that is a stage with its own threads and queue,
+// so the lane can get on with copying the next move while this one is looked up in filebot or scanned by subsonic. an
+// operator that takes moves in batches always runs in a stage, even if it's the first, whose queue it's handed them from
+public class MoverThread {
 
     private static final Logger logger = LogManager.getLogger();
+    private static final long PROGRESS_INTERVAL = 30000;
 
-    private final BlockingQueue<PathObject> pathObjectQueue;
-    private final AtomicReference<PathObject> currentObject;
+    private final List<Lane> lanes;
+    // which lane moves between each pair of file stores go to
+    private final Map<List<FileStore>, Lane> laneAssignments;
+    private final int laneCount;
+    private final int laneDepth;
+    private final MoveQueue.Order queueOrder;
+    private final long queueAging;
+    private final int stageThreads;
+    private final int stageDepth;
+    // each operator's stages that have been used, by operator then index
+    private final Map<MoveOperator, Map<Integer, Stage>> stages;
     private final Set<PosixFilePermission> filePermissions;
     private final Set<PosixFilePermission> folderPermissions;
     private final UserPrincipal user;
     private final boolean deleteDuplicateFiles;
     private final Lock simultaneousLock;
+    private final MoveJournal journal;
+    private final ContentIndex contentIndex;
     private final Audit audit;
     private volatile boolean shutdown;
     private volatile boolean shutdownImmediately;
-    private volatile boolean moving;
 
     public MoverThread(final Set<PosixFilePermission> filePermissions, final Set<PosixFilePermission> folderPermissions,
                        final UserPrincipal user, final boolean deleteDuplicateFiles, final Lock simultaneousLock,
-                       final Audit audit) {
-        super("MoverThread");
-        this.pathObjectQueue = new LinkedBlockingQueue<>();
-        this.currentObject = new AtomicReference<>();
+                       final int laneCount, final int laneDepth, final MoveQueue.Order queueOrder, final long queueAging,
+                       final int stageThreads, final int stageDepth, final MoveJournal journal, final ContentIndex contentIndex, final Audit audit) {
+        this.lanes = new CopyOnWriteArrayList<>();
+        this.laneAssignments = new HashMap<>();
+        this.laneCount = Math.max(1, laneCount);
+        this.laneDepth = Math.max(1, laneDepth);
+        this.queueOrder = queueOrder;
+        this.queueAging = queueAging;
+        this.stageThreads = Math.max(1, stageThreads);
+        this.stageDepth = Math.max(1, stageDepth);
+        this.stages = new HashMap<>();
         this.filePermissions = filePermissions;
         this.folderPermissions = folderPermissions;
         this.user = user;
         this.deleteDuplicateFiles = deleteDuplicateFiles;
         this.shutdown = false;
-        this.moving = false;
         this.simultaneousLock = simultaneousLock;
+        this.journal = journal;
+        this.contentIndex = contentIndex;
         this.audit = audit;
         audit.addMoverThread(this);
-        this.start();
-        logger.info("MoverThread initialised");
+        logger.info("MoverThread initialised with up to " + this.laneCount + " lanes");
     }
 
-    @Override
-    public void run() {
-        for (;;) {
-            final PathObject poll;
+    public String getName() {
+        return "MoverThread";
+    }
+
+    public List<String> getLaneStatuses() {
+        if (lanes.isEmpty()) {
+            return Collections.singletonList(getName() + ": Idle");
+        }
+        return getLanes().stream().map(LaneStatus::toString).collect(Collectors.toList());
+    }
+
+    // the lanes, then any stages that have been used
+    public List<LaneStatus> getLanes() {
+        final List<LaneStatus> statuses = lanes.stream().map(Lane::getStatus).collect(Collectors.toList());
+        getStages().forEach(stage -> statuses.addAll(stage.getStatuses()));
+        return statuses;
+    }
+
+    public void shutdown(final boolean immediately) {
+        logger.info("Registering shutdown, " + getQueueSize() + " items left in queue");
+        this.shutdown = true;
+        if (immediately) {
+            this.shutdownImmediately = true;
+        }
+        if (getQueueSize() > 0 && !immediately) {
+            logger.info("Waiting for file move to finish before shutdown");
+        }
+        for (final Lane lane : lanes) {
             try {
-                if (shutdown && pathObjectQueue.isEmpty()) {
-                    return;
+                lane.join();
+            } catch (InterruptedException e) {
+                logger.error("Interrupted whilst waiting for moves to finish on shutdown", e);
+            }
+        }
+        // first stages first, so each has been handed everything it's going to be before it's shut down
+        List<Stage> running;
+        while (!(running = getStages().stream().filter(stage -> !stage.stopped).collect(Collectors.toList())).isEmpty()) {
+            running.get(0).shutdown(immediately);
+        }
+        journal.close();
+        contentIndex.close();
+    }
+
+    // size is what the watcher last saw of the path, for queues that take the smallest first
+    public void submit(final Path from, final Path to, final Mover mover, final long size) {
+        if (!shutdown) {
+            final long id = journal.queued(from, to, mover.getName(), mover.getMoveOperator().getMethod());
+            if (id < 0) {
+                logger.info(from + " is already waiting to be moved, not adding it again");
+                return;
+            }
+            enqueue(new PathObject(id, from, to, mover, Collections.singletonList(from), size));
+        }
+    }
+
+    // queues whatever was in the journal when it was last shut down, each carrying on after the last stage it finished.
+    // anything a move had started writing when it was cut off is removed first so it can be started again, unless it had
+    // finished copying and was deleting the source, in which case the delete is finished instead
+    public void recover(final List<Mover> movers) {
+        final List<PathObject> recovered = new ArrayList<>();
+        for (final MoveJournal.Entry entry : journal.getUnfinished()) {
+            final Mover mover = movers.stream().filter(m -> m.getName().equals(entry.getMover())
+                    && m.getMoveOperator().getMethod().equals(entry.getOperator())).findFirst().orElse(null);
+            if (mover == null) {
+                final String msg = "Not resuming move of " + entry.getFrom() + " as mover " + entry.getMover()
+                        + " with operator " + entry.getOperator() + " is no longer configured";
+                logger.warn(msg);
+                audit.add(new ErrorEntry(msg, null));
+                journal.finished(entry.getId());
+                continue;
+            }
+            List<Path> stages = entry.getStages();
+            if (entry.isStarted() && stages.size() == 1 && entry.getCopiedTo() != null) {
+                // the copy is whole and the source may be partly deleted, so it's the source that has to go
+                if (Files.exists(entry.getCopiedFrom(), LinkOption.NOFOLLOW_LINKS)) {
+                    logger.info("Finishing removing " + entry.getCopiedFrom() + " which had been copied to " + entry.getCopiedTo());
+                    try {
+                        delete(entry.getCopiedFrom());
+                    } catch (IOException e) {
+                        final String msg = "Could not finish removing " + entry.getCopiedFrom() + " which had been copied to "
+                                + entry.getCopiedTo() + ", not resuming its move";
+                        logger.error(msg, e);
+                        audit.add(new ErrorEntry(msg, e));
+                        journal.finished(entry.getId());
+                        continue;
+                    }
                 }
-                poll = pathObjectQueue.poll(5, TimeUnit.SECONDS);
-                if (poll != null) {
-                    moving = true;
-                    currentObject.set(poll);
-                    move(poll);
-                    final int remaining = pathObjectQueue.size();
-                    if (remaining > 0) {
-                        logger.info(remaining + " items to move");
-                    } else {
-                        logger.info("Finished moving files");
+                stages = Arrays.asList(entry.getFrom(), entry.getCopiedTo().toAbsolutePath());
+            } else if (entry.isStarted() && stages.size() == 1) {
+                final boolean fromExists = Files.exists(entry.getFrom(), LinkOption.NOFOLLOW_LINKS);
+                final boolean toExists = Files.exists(entry.getTo(), LinkOption.NOFOLLOW_LINKS);
+                if (!fromExists && toExists) {
+                    // the first stage finished but was cut off before it could say so
+                    stages = Arrays.asList(entry.getFrom(), entry.getTo().toAbsolutePath());
+                } else if (fromExists && toExists && !entry.didTargetExist()) {
+                    logger.info("Removing " + entry.getTo() + " left behind by an unfinished move of " + entry.getFrom());
+                    try {
+                        delete(entry.getTo());
+                    } catch (IOException e) {
+                        final String msg = "Could not remove " + entry.getTo() + " left behind by an unfinished move of "
+                                + entry.getFrom() + ", not resuming it";
+                        logger.error(msg, e);
+                        audit.add(new ErrorEntry(msg, e));
+                        journal.finished(entry.getId());
+                        continue;
                     }
-                    currentObject.set(null);
                 }
-                if (this.shutdownImmediately) {
-                    logger.info("Shutting down MoverThread with " + pathObjectQueue.size() + " items left to be moved");
+            }
+            if (stages.size() > mover.getMoveOperator().getStageCount()) {
+                logger.info("Move of " + entry.getFrom() + " to " + entry.getTo() + " had already finished");
+                journal.finished(entry.getId());
+                continue;
+            }
+            // they were already under way, so there's no point sizing them to see where they'd queue
+            recovered.add(new PathObject(entry.getId(), entry.getFrom(), entry.getTo(), mover, stages, 0));
+        }
+        if (!recovered.isEmpty()) {
+            logger.info("Resuming " + recovered.size() + " moves left unfinished");
+            // lanes only take so many at a time, and startup shouldn't have to wait for them to make room
+            final Thread recovery = new Thread(() -> recovered.forEach(this::enqueue), getName() + "-Recovery");
+            recovery.setDaemon(true);
+            recovery.start();
+        }
+    }
+
+    private void enqueue(final PathObject pathObject) {
+        if (shutdown) {
+            return;
+        }
+        final Lane lane = getLane(pathObject.getFrom(), pathObject.getTo());
+        try {
+            // once a lane's full this waits, so whatever is submitting slows down rather than the queue growing
+            lane.queue.put(pathObject, pathObject.getMover().getPriority(), pathObject.size);
+        } catch (InterruptedException e) {
+            logger.error("Interrupted whilst waiting to add " + pathObject.getFrom() + " to the move queue", e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        logger.info(pathObject.getFrom().getFileName().toString() + " added to move queue " + lane.getName() + " with operator "
+                + pathObject.getOperator().getMethod() + "; queue now contains " + lane.queue.size() + " items");
+    }
+
+    private int getQueueSize() {
+        return lanes.stream().mapToInt(lane -> lane.queue.size()).sum()
+                + getStages().stream().mapToInt(stage -> stage.queue.size()).sum();
+    }
+
+    // in the order moves go through them
+    private synchronized List<Stage> getStages() {
+        return stages.values().stream().flatMap(operatorStages -> operatorStages.values().stream())
+                .sorted(Comparator.comparingInt(stage -> stage.index))
+                .collect(Collectors.toList());
+    }
+
+    private synchronized Stage getStage(final MoveOperator operator, final int index) {
+        return stages.computeIfAbsent(operator, ignore -> new HashMap<>())
+                .computeIfAbsent(index, ignore -> new Stage(operator, index));
+    }
+
+    private synchronized Lane getLane(final Path from, final Path to) {
+        final List<FileStore> stores = Arrays.asList(CopyEngine.getFileStore(from), CopyEngine.getFileStore(to));
+        final Lane assigned = laneAssignments.get(stores);
+        if (assigned != null) {
+            return assigned;
+        }
+        final Lane lane;
+        if (lanes.size() < laneCount) {
+            lane = new Lane(lanes.size() + 1);
+            lanes.add(lane);
+            lane.start();
+        } else {
+            // share the quietest lane
+            lane = lanes.stream().min(Comparator.comparingInt(l -> l.queue.size())).orElseThrow(IllegalStateException::new);
+        }
+        logger.info("Moves from " + stores.get(0) + " to " + stores.get(1) + " will use " + lane.getName());
+        laneAssignments.put(stores, lane);
+        return lane;
+    }
+
+    private final class Lane extends Thread {
+
+        private final MoveQueue<PathObject> queue;
+        private final AtomicReference<PathObject> currentObject;
+        private final AtomicReference<CopyProgress> currentProgress;
+
+        private Lane(final int number) {
+            super("MoverThread-" + number);
+            this.queue = new MoveQueue<>(laneDepth, queueOrder, queueAging);
+            this.currentObject = new AtomicReference<>();
+            this.currentProgress = new AtomicReference<>();
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                try {
+                    if (shutdown && queue.isEmpty()) {
+                        return;
+                    }
+                    final PathObject poll = queue.poll(5, TimeUnit.SECONDS);
+                    if (poll != null) {
+                        final CopyProgress progress = new CopyProgress(poll.getOperator().getMethod() + " " + poll.getFrom(), PROGRESS_INTERVAL);
+                        currentProgress.set(progress);
+                        currentObject.set(poll);
+                        CopyEngine.setThreadProgress(progress);
+                        CopyEngine.setThreadCheckpoint((from, to) -> journal.copied(poll.id, from, to));
+                        startMove(poll);
+                        final int remaining = queue.size();
+                        if (remaining > 0) {
+                            logger.info(remaining + " items to move in " + getName());
+                        } else {
+                            logger.info("Finished moving files in " + getName());
+                        }
+                    }
+                    if (shutdownImmediately) {
+                        logger.info("Shutting down " + getName() + " with " + queue.size() + " items left to be moved");
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    logger.debug(getName() + " interrupted", e);
                     return;
+                } finally {
+                    CopyEngine.setThreadProgress(null);
+                    CopyEngine.setThreadCheckpoint(null);
+                    currentObject.set(null);
+                    currentProgress.set(null);
                 }
-            } catch (InterruptedException e) {
-                logger.debug("MoverThread interrupted", e);
-                return;
-            } finally {
-                moving = false;
             }
         }
-    }
 
-    public String getCurrentlyMovingObject() {
-        if (moving) {
+        private LaneStatus getStatus() {
             final PathObject pathObject = currentObject.get();
             if (pathObject != null) {
-                return this.getName() + ": " + pathObject.getOperator().getMethod() + ": " + pathObject.getFrom() + " -> " + pathObject.getTo();
+                return new LaneStatus(getName(), pathObject.getOperator().getMethod(), pathObject.getFrom(), pathObject.getTo(),
+                        queue.size(), currentProgress.get());
             }
+            return new LaneStatus(getName(), null, null, null, queue.size(), null);
         }
-        return this.getName() + ": Idle";
     }
 
-    public void shutdown(final boolean immediately) {
-        logger.info("Registering shutdown, " + pathObjectQueue.size() + " items left in queue");
-        this.shutdown = true;
-        if (immediately) {
-            this.shutdownImmediately = true;
+    // one of a composite operator's stages after the first, or any that batches. a move is handed on to the next stage as
+    // soon as this one's done with it, and with one thread they leave in the order they came, so later moves can't
+    // overtake earlier ones
+    private final class Stage {
+
+        private final MoveOperator operator;
+        private final int index;
+        private final String name;
+        // once it's full whoever's handing on waits, so a slow stage holds up the ones before it rather than its queue
+        // growing
+        private final BlockingQueue<PathObject> queue;
+        private final List<Thread> threads;
+        private final Map<PathObject, CopyProgress> current;
+        private volatile boolean stopped;
+
+        private Stage(final MoveOperator operator, final int index) {
+            this.operator = operator;
+            this.index = index;
+            this.name = "MoverStage-" + operator.getMethod() + "-" + index;
+            this.queue = new ArrayBlockingQueue<>(stageDepth);
+            this.threads = new ArrayList<>();
+            this.current = new ConcurrentHashMap<>();
+            for (int i = 1; i <= stageThreads; i++) {
+                final Thread thread = new Thread(this::run, name + "-" + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+            logger.info("Started stage " + index + " of operator " + operator.getMethod());
         }
-        if (!pathObjectQueue.isEmpty()) {
-            logger.info("Waiting for file move to finish before shutdown");
-            while (!pathObjectQueue.isEmpty()) {
+
+        private void submit(final PathObject pathObject) {
+            if (stopped) {
+                throw new RejectedExecutionException(name + " has shut down");
+            }
+            try {
+                queue.put(pathObject);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted whilst waiting for room in " + name);
+            }
+        }
+
+        private void run() {
+            for (;;) {
+                final PathObject first;
+                try {
+                    if (stopped && queue.isEmpty()) {
+                        return;
+                    }
+                    first = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    logger.debug(Thread.currentThread().getName() + " interrupted", e);
+                    return;
+                }
+                if (first != null) {
+                    run(gather(first));
+                }
+            }
+        }
+
+        private void run(final List<PathObject> batch) {
+            for (final PathObject pathObject : batch) {
+                current.put(pathObject, new CopyProgress(operator.getMethod() + " " + pathObject.getFrom(), PROGRESS_INTERVAL));
+            }
+            CopyEngine.setThreadProgress(current.get(batch.get(0)));
+            try {
+                runStages(batch);
+            } finally {
+                CopyEngine.setThreadProgress(null);
+                batch.forEach(current::remove);
+            }
+        }
+
+        // if the stage batches, takes whatever's queued behind the first move as well, waiting until there are enough
+        // to fill the batch or the batch wait runs out. nothing's locked meanwhile, so other moves carry on
+        private List<PathObject> gather(final PathObject first) {
+            final List<PathObject> batch = new ArrayList<>(Collections.singletonList(first));
+            final int batchSize = operator.getBatchSize(index);
+            final long deadline = System.currentTimeMillis() + operator.getBatchWait(index);
+            try {
+                while (batch.size() < batchSize && !shutdownImmediately) {
+                    final PathObject next = queue.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (batch.size() > 1) {
+                logger.info(name + " batching " + batch.size() + " moves");
+            }
+            return batch;
+        }
+
+        // anything still queued after an immediate shutdown is left in the journal, to carry on from this stage when
+        // it's started again
+        private void shutdown(final boolean immediately) {
+            stopped = true;
+            if (immediately) {
+                final int dropped = queue.size();
+                queue.clear();
+                if (dropped > 0) {
+                    logger.info("Shutting down " + name + " with " + dropped + " items left to be moved");
+                }
+            }
+            for (final Thread thread : threads) {
                 try {
-                    Thread.sleep(100);
+                    thread.join();
                 } catch (InterruptedException e) {
                     logger.error("Interrupted whilst waiting for moves to finish on shutdown", e);
+                    Thread.currentThread().interrupt();
+                    return;
                 }
             }
         }
-        this.interrupt();
+
+        private List<LaneStatus> getStatuses() {
+            final int queued = queue.size();
+            if (current.isEmpty()) {
+                return Collections.singletonList(new LaneStatus(name, null, null, null, queued, null));
+            }
+            return current.entrySet().stream()
+                    .map(entry -> new LaneStatus(name, operator.getMethod(), entry.getKey().getFrom(), entry.getKey().getTo(),
+                            queued, entry.getValue()))
+                    .collect(Collectors.toList());
+        }
     }
 
-    public void submit(final Path from, final Path to, final Mover mover) {
-        if (!shutdown) {
-            pathObjectQueue.add(new PathObject(from, to, mover));
-            logger.info(from.getFileName().toString() + " added to move queue with operator " + mover.getMoveOperator().getMethod()
-                    + "; queue now contains " + pathObjectQueue.size() + " items");
+    // what a lane is doing. the move's details and progress are null if it's idle, and the progress only counts data
+    // that's had to be copied, so it stays at nothing for renames and anything else that doesn't copy
+    public static final class LaneStatus {
+        private final String lane;
+        private final String operator;
+        private final Path from;
+        private final Path to;
+        private final int queued;
+        private final CopyProgress progress;
+
+        private LaneStatus(final String lane, final String operator, final Path from, final Path to, final int queued,
+                           final CopyProgress progress) {
+            this.lane = lane;
+            this.operator = operator;
+            this.from = from;
+            this.to = to;
+            this.queued = queued;
+            this.progress = progress;
+        }
+
+        public String getLane() {
+            return lane;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public Path getFrom() {
+            return from;
+        }
+
+        public Path getTo() {
+            return to;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public CopyProgress getProgress() {
+            return progress;
+        }
+
+        @Override
+        public String toString() {
+            final String queuedMoves = queued == 0 ? "" : " (" + queued + " queued)";
+            if (operator == null) {
+                return lane + ": Idle" + queuedMoves;
+            }
+            final String copied = progress != null && progress.getTotal() > 0 ? " - " + progress : "";
+            return lane + ": " + operator + ": " + from + " -> " + to + copied + queuedMoves;
         }
     }
 
-    private void move(final PathObject pathObject) {
+    // the move's first stage, in its lane
+    private void startMove(final PathObject pathObject) {
+        lock();
         try {
-            if (simultaneousLock != null) {
-                simultaneousLock.lock();
-            }
-            if (deleteDuplicateFiles && pathObject.getTo().toFile().exists()
-                    && Files.size(pathObject.getFrom()) < Files.size(pathObject.getTo())) {
-                logger.warn("Deleting duplicate files - " + pathObject.getFrom() + " to " + pathObject.getTo());
-                if (pathObject.getTo().toFile().isDirectory()) {
-                    FileUtils.deleteDirectory(pathObject.getTo().toFile());
-                } else {
-                    Files.delete(pathObject.getTo());
+            // a resumed move's target is most likely there because an earlier stage put it there
+            final boolean resuming = pathObject.getCompleted().size() > 1;
+            if (deleteDuplicateFiles && !resuming && pathObject.getTo().toFile().exists()) {
+                if (contentIndex.sameContents(pathObject.getFrom(), pathObject.getTo())) {
+                    if (pathObject.getOperator().consumesSource()) {
+                        // it's already there, and the move would have taken it out of the watch directory anyway
+                        logger.warn("Deleting duplicate files - " + pathObject.getFrom() + " is already at " + pathObject.getTo());
+                        delete(pathObject.getFrom());
+                        audit.add(new DuplicateEntry(pathObject.getFrom().toAbsolutePath().toString()));
+                    } else {
+                        // the operator leaves the source where it is, for eg a torrent that's still seeding, so it stays
+                        logger.warn("Not moving " + pathObject.getFrom() + " with operator " + pathObject.getOperator().getMethod()
+                                + " as it's already at " + pathObject.getTo());
+                    }
+                    journal.finished(pathObject.id);
+                    return;
+                }
+                if (Fingerprint.of(pathObject.getFrom()).getTotalSize() < Fingerprint.of(pathObject.getTo()).getTotalSize()) {
+                    logger.warn("Deleting duplicate files - " + pathObject.getFrom() + " to " + pathObject.getTo());
+                    delete(pathObject.getTo());
+                    audit.add(new DuplicateEntry(pathObject.getTo().toAbsolutePath().toString()));
                 }
-                audit.add(new DuplicateEntry(pathObject.getTo().toAbsolutePath().toString()));
             }
             logger.info("Moving " + pathObject.getFrom() + " to " + pathObject.getTo() + " with operator " + pathObject.getOperator().getMethod());
-            final Path finalDir = pathObject.getOperator().move(pathObject.getFrom(), pathObject.getTo(), filePermissions, folderPermissions, user);
-            logger.info("Move of " + pathObject.getFrom() + " finished; ended up at " + finalDir + ". " + pathObjectQueue.size() + " items remaining");
+            if (!resuming) {
+                journal.started(pathObject.id, pathObject.getTo().toFile().exists());
+            }
+            pathObject.started = System.currentTimeMillis();
+            pathObject.getOperator().prepare(pathObject.getFrom(), pathObject.getTo(), filePermissions, folderPermissions, user, pathObject);
+            // a stage that batches is left to its own queue, to be batched with whatever else queues there
+            if (pathObject.getOperator().getBatchSize(pathObject.getCompleted().size() - 1) <= 1) {
+                pathObject.getOperator().operateStage(pathObject.getFrom(), pathObject.getTo(), pathObject);
+            }
+        } catch (Exception e) {
+            failed(pathObject, e);
+            return;
+        } finally {
+            unlock();
+        }
+        next(pathObject);
+    }
+
+    private void runStage(final PathObject pathObject) {
+        lock();
+        try {
+            pathObject.getOperator().operateStage(pathObject.getFrom(), pathObject.getTo(), pathObject);
+        } catch (Exception e) {
+            failed(pathObject, e);
+            return;
+        } finally {
+            unlock();
+        }
+        next(pathObject);
+    }
+
+    // the moves are all at the same stage of the same operator
+    private void runStages(final List<PathObject> pathObjects) {
+        if (pathObjects.size() == 1) {
+            runStage(pathObjects.get(0));
+            return;
+        }
+        final List<CompletableFuture<Path>> results;
+        lock();
+        try {
+            results = pathObjects.get(0).getOperator().operateStages(
+                    pathObjects.stream().map(PathObject::getFrom).collect(Collectors.toList()),
+                    pathObjects.stream().map(PathObject::getTo).collect(Collectors.toList()),
+                    pathObjects);
+        } catch (Exception e) {
+            pathObjects.forEach(pathObject -> failed(pathObject, e));
+            return;
+        } finally {
+            unlock();
+        }
+        for (int i = 0; i < pathObjects.size(); i++) {
+            try {
+                results.get(i).join();
+            } catch (CompletionException e) {
+                failed(pathObjects.get(i), e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                continue;
+            }
+            next(pathObjects.get(i));
+        }
+    }
+
+    // hands the move on to the stage after the last one it finished, or finishes it if there are no more
+    private void next(final PathObject pathObject) {
+        final int stage = pathObject.getCompleted().size() - 1;
+        if (stage >= pathObject.getOperator().getStageCount()) {
+            finish(pathObject);
+            return;
+        }
+        try {
+            getStage(pathObject.getOperator(), stage).submit(pathObject);
+        } catch (RejectedExecutionException e) {
+            if (shutdown) {
+                // the journal still has it, so it carries on from here when it's started again
+                logger.info("Not handing on move of " + pathObject.getFrom() + " after stage " + stage + ": " + e.getMessage());
+            } else {
+                // otherwise nothing would pick it up again until a restart
+                failed(pathObject, e);
+            }
+        }
+    }
+
+    private void finish(final PathObject pathObject) {
+        lock();
+        try {
+            final Path finalDir = pathObject.getCompleted().get(pathObject.getCompleted().size() - 1);
+            pathObject.getOperator().finish(pathObject.getFrom(), finalDir, pathObject.started, filePermissions, folderPermissions, user);
+            logger.info("Move of " + pathObject.getFrom() + " finished; ended up at " + finalDir + ". " + getQueueSize() + " items remaining");
             audit.add(new MovedEntry(pathObject.getFrom().toAbsolutePath().toString(),
                     finalDir.toAbsolutePath().toString(), pathObject.getOperator().getMethod()));
             pathObject.getMover().notify(new NotificationEntry(Type.MOVED, "Finished moving\n" + pathObject.getFrom()));
+            journal.finished(pathObject.id);
         } catch (Exception e) {
-            final String s = pathObject.getOperator().getMethod() + ": Error moving from " + pathObject.getFrom().toString()
-                    + " to " + pathObject.getTo().toString();
-            logger.error(s, e);
-            final ErrorEntry entry = new ErrorEntry(s, e);
-            audit.add(entry);
-            Notifier.notifiyAll(entry);
+            failed(pathObject, e);
         } finally {
-            if (simultaneousLock != null) {
-                simultaneousLock.unlock();
-            }
+            unlock();
+        }
+    }
+
+    private void failed(final PathObject pathObject, final Exception e) {
+        final String s = pathObject.getOperator().getMethod() + ": Error moving from " + pathObject.getFrom().toString()
+                + " to " + pathObject.getTo().toString();
+        logger.error(s, e);
+        final ErrorEntry entry = new ErrorEntry(s, e);
+        audit.add(entry);
+        Notifier.notifiyAll(entry);
+        // failed moves aren't retried after a restart either, they'd most likely just fail again
+        journal.finished(pathObject.id);
+    }
+
+    private void lock() {
+        if (simultaneousLock != null) {
+            simultaneousLock.lock();
         }
     }
 
+    private void unlock() {
+        if (simultaneousLock != null) {
+            simultaneousLock.unlock();
+        }
+    }
 
-    private static final class PathObject {
+    private static void delete(final Path path) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            FileUtils.deleteDirectory(path.toFile());
+        } else {
+            Files.delete(path);
+        }
+    }
+
+    private final class PathObject implements Stages {
+        private final long id;
         private final Path from;
         private final Path to;
         private final Mover mover;
+        private final List<Path> completed;
+        private final long size;
+        private long started;
 
-        private PathObject(final Path from, final Path to, final Mover mover) {
+        private PathObject(final long id, final Path from, final Path to, final Mover mover, final List<Path> completed,
+                           final long size) {
+            this.id = id;
             this.from = from;
             this.to = to;
             this.mover = mover;
+            this.completed = new ArrayList<>(completed);
+            this.size = size;
+        }
+
+        @Override
+        public List<Path> getCompleted() {
+            return completed;
+        }
+
+        @Override
+        public void completed(final Path result) {
+            completed.add(result);
+            journal.stageCompleted(id, result);
         }
 
         private Path getFrom() {
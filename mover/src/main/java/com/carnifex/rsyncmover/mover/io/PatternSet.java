@@ -0,0 +1,77 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+// a mover's list of regexes compiled into a single alternation, so a filename is scanned once per mover rather than
+// once per regex. patterns that can't be combined (back references and named groups depend on their own group
+// numbering) are kept separate
+final class PatternSet {
+
+    private static final Pattern UNCOMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]");
+
+    private final List<String> regexes;
+    private final boolean partialMatch;
+    private final List<Pattern> patterns;
+
+    PatternSet(final List<String> regexes, final boolean partialMatch) {
+        this.regexes = Collections.unmodifiableList(regexes);
+        this.partialMatch = partialMatch;
+        this.patterns = compile(regexes);
+    }
+
+    private static List<Pattern> compile(final List<String> regexes) {
+        // compile them all individually first so a bad regex is reported on its own
+        final List<Pattern> individual = regexes.stream().map(Pattern::compile).collect(Collectors.toList());
+        final List<String> combinable = regexes.stream().filter(regex -> !UNCOMBINABLE.matcher(regex).find()).collect(Collectors.toList());
+        if (combinable.size() < 2) {
+            return individual;
+        }
+        final List<Pattern> patterns = individual.stream()
+                .filter(pattern -> !combinable.contains(pattern.pattern())).collect(Collectors.toList());
+        try {
+            patterns.add(0, Pattern.compile(combinable.stream().map(regex -> "(?:" + regex + ")").collect(Collectors.joining("|"))));
+            return patterns;
+        } catch (PatternSyntaxException e) {
+            // for eg a comment or unterminated quote swallowing the rest of the alternation, match them one by one
+            return individual;
+        }
+    }
+
+    boolean isEmpty() {
+        return regexes.isEmpty();
+    }
+
+    boolean matches(final String name) {
+        for (final Pattern pattern : patterns) {
+            if (partialMatch ? pattern.matcher(name).find() : pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final PatternSet that = (PatternSet) o;
+
+        return partialMatch == that.partialMatch && regexes.equals(that.regexes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * regexes.hashCode() + (partialMatch ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return regexes.toString();
+    }
+}
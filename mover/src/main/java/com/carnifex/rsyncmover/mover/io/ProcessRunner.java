@@ -0,0 +1,242 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// runs external commands. stdout and stderr are read at the same time, each on its own thread, so a command that fills
+// one pipe while we're reading the other can't stall, and only the last so many lines of each are kept. a command that
+// runs for longer than its timeout, or prints nothing for longer than its idle timeout, is killed. every call's exit
+// code, time taken and how much it printed are logged and added to the totals for its name
+public final class ProcessRunner {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final int MAX_LINES = 10000;
+    private static final long WAIT_INTERVAL = 100;
+    // how long to wait for the rest of the output once the process has gone
+    private static final long READ_GRACE = 5000;
+    private static final ExecutorService readers;
+    private static final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    static {
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        readers = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                r -> {
+                    final Thread thread = new Thread(r, "ProcessOutput" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private ProcessRunner() {}
+
+    // the timeouts are in millis, 0 for none. throws if the command was killed
+    public static Result run(final String name, final List<String> command, final long timeout, final long idleTimeout) throws IOException {
+        return run(name, command, Collections.emptyMap(), timeout, idleTimeout);
+    }
+
+    // environment is added to what this process was started with
+    public static Result run(final String name, final List<String> command, final Map<String, String> environment,
+                             final long timeout, final long idleTimeout) throws IOException {
+        logger.trace("Executing \"" + String.join(" ", command) + "\"");
+        final long start = System.currentTimeMillis();
+        final ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().putAll(environment);
+        final Process process = builder.start();
+        // nothing's sent to it, so anything that asks a question gets no answer rather than waiting for one
+        process.getOutputStream().close();
+        final AtomicLong lastOutput = new AtomicLong(start);
+        final Output stdout = new Output();
+        final Output stderr = new Output();
+        final Future<?> readingStdout = readers.submit(() -> stdout.read(process.getInputStream(), lastOutput));
+        final Future<?> readingStderr = readers.submit(() -> stderr.read(process.getErrorStream(), lastOutput));
+        String killed = null;
+        try {
+            while (!process.waitFor(WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                final long now = System.currentTimeMillis();
+                if (timeout > 0 && now - start >= timeout) {
+                    killed = "ran for longer than " + timeout / 1000 + "s";
+                } else if (idleTimeout > 0 && now - lastOutput.get() >= idleTimeout) {
+                    killed = "printed nothing for " + idleTimeout / 1000 + "s";
+                }
+                if (killed != null) {
+                    process.destroyForcibly();
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst running " + name);
+        }
+        awaitOutput(name, readingStdout);
+        awaitOutput(name, readingStderr);
+        final long duration = System.currentTimeMillis() - start;
+        final Result result = new Result(killed != null ? -1 : process.exitValue(), duration, stdout, stderr);
+        statistics.computeIfAbsent(name, ignore -> new Statistics()).add(result, killed != null);
+        if (killed != null) {
+            final String msg = name + " " + killed + ", killed it after " + duration + "ms";
+            logger.warn(msg + "; it printed " + result.getOutputBytes() + " bytes");
+            throw new IOException(msg + (result.getStderr().isEmpty() ? "" : ": " + String.join("\n", result.getStderr())));
+        }
+        logger.info(name + " exited with " + result.getExitCode() + " after " + duration + "ms, printing " + result.getOutputBytes() + " bytes");
+        return result;
+    }
+
+    // the totals for each name, for status pages
+    public static List<String> getStatistics() {
+        return statistics.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> entry.getKey() + ": " + entry.getValue())
+                .collect(Collectors.toList());
+    }
+
+    // if something the process started is still holding its output open, what's been read so far will have to do
+    private static void awaitOutput(final String name, final Future<?> reading) throws IOException {
+        try {
+            reading.get(READ_GRACE, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Output of " + name + " still open " + READ_GRACE + "ms after it exited, not reading any more of it");
+            reading.cancel(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst reading the output of " + name);
+        } catch (ExecutionException e) {
+            throw new IOException("Error reading the output of " + name, e.getCause());
+        }
+    }
+
+    public static final class Result {
+        private final int exitCode;
+        private final long duration;
+        private final List<String> stdout;
+        private final List<String> stderr;
+        private final long outputBytes;
+
+        private Result(final int exitCode, final long duration, final Output stdout, final Output stderr) {
+            this.exitCode = exitCode;
+            this.duration = duration;
+            this.stdout = stdout.getLines();
+            this.stderr = stderr.getLines();
+            this.outputBytes = stdout.bytes.get() + stderr.bytes.get();
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        // the last lines printed to stdout, up to MAX_LINES of them
+        public List<String> getStdout() {
+            return stdout;
+        }
+
+        public List<String> getStderr() {
+            return stderr;
+        }
+
+        // everything printed to either, including any lines that weren't kept
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+    }
+
+    // the last MAX_LINES lines of one of the streams, dropping the oldest to make room
+    private static final class Output {
+        private final Deque<String> lines = new ArrayDeque<>();
+        private final AtomicLong bytes = new AtomicLong(0);
+        private long dropped;
+
+        private Void read(final InputStream stream, final AtomicLong lastOutput) throws IOException {
+            final InputStream counting = new FilterInputStream(stream) {
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int read = super.read(b, off, len);
+                    if (read > 0) {
+                        bytes.addAndGet(read);
+                        lastOutput.set(System.currentTimeMillis());
+                    }
+                    return read;
+                }
+            };
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(counting, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    logger.trace(line);
+                    synchronized (this) {
+                        if (lines.size() == MAX_LINES) {
+                            lines.removeFirst();
+                            dropped++;
+                        }
+                        lines.addLast(line);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private synchronized List<String> getLines() {
+            if (dropped > 0) {
+                logger.debug("Dropped the first " + dropped + " lines of output, keeping the last " + MAX_LINES);
+            }
+            return new ArrayList<>(lines);
+        }
+    }
+
+    private static final class Statistics {
+        private long calls;
+        private long failed;
+        private long killed;
+        private long totalDuration;
+        private long totalBytes;
+        private int lastExitCode;
+
+        private synchronized void add(final Result result, final boolean wasKilled) {
+            calls++;
+            if (wasKilled) {
+                killed++;
+            } else if (result.getExitCode() != 0) {
+                failed++;
+            }
+            totalDuration += result.getDuration();
+            totalBytes += result.getOutputBytes();
+            lastExitCode = result.getExitCode();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return calls + " calls, " + failed + " failed, " + killed + " killed, averaging " + totalDuration / Math.max(1, calls)
+                    + "ms and " + totalBytes / Math.max(1, calls) + " bytes of output; last exited with " + lastExitCode;
+        }
+    }
+}
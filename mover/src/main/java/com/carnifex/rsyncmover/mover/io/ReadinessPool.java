@@ -0,0 +1,130 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// runs readiness checks on a fixed number of threads. a check that runs past the timeout is interrupted and given up
+// on, and as a thread blocked on a dead network share often can't be interrupted, another thread is started to take its
+// place until it does finish
+final class ReadinessPool {
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final long timeout;
+    // checks that have been given up on but are still holding a thread
+    private int abandoned;
+
+    ReadinessPool(final String name, final int threads, final long timeout) {
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    // a check stuck on a dead network share shouldn't keep the vm alive
+                    final Thread thread = new Thread(r, name + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.threads = threads;
+        this.timeout = timeout;
+        this.abandoned = 0;
+    }
+
+    <T> Check<T> submit(final Callable<T> callable) {
+        final Check<T> check = new Check<>();
+        check.future = executor.submit(() -> {
+            check.started = System.currentTimeMillis();
+            try {
+                return callable.call();
+            } finally {
+                if (check.end()) {
+                    resize(-1);
+                }
+            }
+        });
+        return check;
+    }
+
+    // gives up on the check if it has been running longer than the timeout, returns whether it did
+    boolean abandonIfStuck(final Check<?> check, final long now) {
+        final long started = check.started;
+        if (started == 0 || now - started <= timeout || !check.abandon()) {
+            return false;
+        }
+        resize(1);
+        check.future.cancel(true);
+        return true;
+    }
+
+    private synchronized void resize(final int change) {
+        abandoned += change;
+        final int size = threads + abandoned;
+        // the core size can't go above the maximum, so grow the maximum first and shrink it last
+        if (change > 0) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    // number of threads the pool will run, including any held by checks that have been given up on
+    synchronized int getThreadLimit() {
+        return threads + abandoned;
+    }
+
+    void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    static final class Check<T> {
+        private Future<T> future;
+        // zero until a pool thread picks it up
+        private volatile long started;
+        private boolean abandoned;
+        private boolean ended;
+
+        private synchronized boolean abandon() {
+            if (ended || abandoned) {
+                return false;
+            }
+            abandoned = true;
+            return true;
+        }
+
+        // returns whether the check had been given up on
+        private synchronized boolean end() {
+            ended = true;
+            return abandoned;
+        }
+
+        // whether the check's thread has finished with it, an abandoned check isn't done until the thread comes back
+        synchronized boolean isFinished() {
+            return abandoned ? ended : future.isDone();
+        }
+
+        synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        long getStarted() {
+            return started;
+        }
+
+        T get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        T get(final long wait, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(wait, unit);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.carnifex.rsyncmover.mover.io;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// hashed timing wheel - keys are hashed into a bucket by the tick their deadline falls on, and advancing the wheel only
+// looks at the buckets for the ticks that have passed, so the cost of a tick scales with how many timers are due rather
+// than with how many are pending. rescheduling a key just moves it to another bucket; the old bucket entry is
+// discarded lazily when the wheel next passes over it
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final List<Set<T>> buckets;
+    private final Map<T, Timeout> timeouts;
+    private long currentTick;
+
+    public TimingWheel(final long tickMillis, final int wheelSize, final long now) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new LinkedHashSet<>());
+        }
+        this.timeouts = new HashMap<>();
+        this.currentTick = now / tickMillis;
+    }
+
+    public synchronized void schedule(final T key, final long deadline) {
+        // round up so the bucket isn't reached before the deadline, and put anything already due in the next bucket to
+        // be processed rather than one the wheel has already passed
+        final long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick);
+        final int bucket = (int) (tick % buckets.size());
+        timeouts.put(key, new Timeout(deadline, bucket));
+        buckets.get(bucket).add(key);
+    }
+
+    public synchronized void cancel(final T key) {
+        timeouts.remove(key);
+    }
+
+    public synchronized boolean isScheduled(final T key) {
+        return timeouts.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return timeouts.size();
+    }
+
+    // returns all keys whose deadline is at or before now, in the order their buckets were reached
+    public synchronized List<T> advance(final long now) {
+        final List<T> expired = new ArrayList<>();
+        final long targetTick = now / tickMillis;
+        // if we've fallen more than a revolution behind every bucket gets visited once anyway
+        final long firstTick = Math.max(currentTick, targetTick - buckets.size() + 1);
+        for (long tick = firstTick; tick <= targetTick; tick++) {
+            final int bucket = (int) (tick % buckets.size());
+            for (final Iterator<T> iterator = buckets.get(bucket).iterator(); iterator.hasNext(); ) {
+                final T key = iterator.next();
+                final Timeout timeout = timeouts.get(key);
+                if (timeout == null || timeout.bucket != bucket) {
+                    // cancelled or rescheduled into a different bucket
+                    iterator.remove();
+                } else if (timeout.deadline <= now) {
+                    iterator.remove();
+                    timeouts.remove(key);
+                    expired.add(key);
+                }
+                // otherwise it's due on a later revolution
+            }
+        }
+        currentTick = targetTick + 1;
+        return expired;
+    }
+
+    private static final class Timeout {
+        private final long deadline;
+        private final int bucket;
+
+        private Timeout(final long deadline, final int bucket) {
+            this.deadline = deadline;
+            this.bucket = bucket;
+        }
+    }
+}
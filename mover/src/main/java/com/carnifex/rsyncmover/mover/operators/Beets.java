@@ -3,38 +3,48 @@ package com.carnifex.rsyncmover.mover.operators;
 import com.carnifex.rsyncmover.audit.Audit;
 import com.carnifex.rsyncmover.audit.entry.ErrorEntry;
 import com.carnifex.rsyncmover.mover.io.Mover;
+import com.carnifex.rsyncmover.mover.io.ProcessRunner;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 
 
 public class Beets extends MoveOperator {
 
     private static final String tempPath = File.separator + "beetstemp";
+    private static final String TIMEOUT = "timeout:";
+    private static final String IDLE_TIMEOUT = "idleTimeout:";
+    private static final long DEFAULT_TIMEOUT = 1800;
+    private static final long DEFAULT_IDLE_TIMEOUT = 600;
+    private static final long CONFIG_TIMEOUT = 60000;
     private final Move move;
     private final List<String> additionalArguments;
+    private final long timeout;
+    private final long idleTimeout;
     private String beetsLocation = "beet";
     private String untaggedLocation;
 
     private Beets() {
         this.move = null;
         this.additionalArguments = null;
+        this.timeout = 0;
+        this.idleTimeout = 0;
     }
 
     private Beets(final Audit audit, final List<String> additionalArguments) {
         super(audit, additionalArguments);
         this.additionalArguments = new ArrayList<>(additionalArguments != null ? additionalArguments : Collections.emptyList());
+        this.timeout = TimeUnit.SECONDS.toMillis(Long.parseLong(removeArgument(this.additionalArguments, TIMEOUT, String.valueOf(DEFAULT_TIMEOUT))));
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(removeArgument(this.additionalArguments, IDLE_TIMEOUT, String.valueOf(DEFAULT_IDLE_TIMEOUT))));
         final Iterator<String> iter = this.additionalArguments.iterator();
         while (iter.hasNext()) {
             final String next = iter.next();
@@ -50,8 +60,7 @@ public class Beets extends MoveOperator {
         this.move = (Move) MoveOperator.create("move", Collections.emptyList(), audit);
 
         try {
-            final Process exec = Runtime.getRuntime().exec(new String[]{beetsLocation, "config", "-p"});
-            final String configOutput = new BufferedReader(new InputStreamReader(exec.getInputStream())).lines().collect(Collectors.joining("\n"));
+            final String configOutput = String.join("\n", ProcessRunner.run("beets", Arrays.asList(beetsLocation, "config", "-p"), CONFIG_TIMEOUT, 0).getStdout());
             logger.info("Beets config located at: " + configOutput);
         } catch (IOException e) {
             final String msg = "Error getting beets config location - is it installed?";
@@ -67,16 +76,7 @@ public class Beets extends MoveOperator {
 
     private Path exec(final Path to, final String... args) throws IOException {
         final String[] argArray = buildArgArray(args);
-        logger.trace("Executing \"" + Stream.of(argArray).collect(Collectors.joining(" ")) + "\"");
-        final Process exec = Runtime.getRuntime().exec(argArray);
-        final List<String> stdout = new BufferedReader(new InputStreamReader(exec.getInputStream())).lines()
-                .peek(logger::trace).collect(Collectors.toList());
-        final String errors = new BufferedReader(new InputStreamReader(exec.getErrorStream())).lines().collect(Collectors.joining("\n"));
-        if (errors != null && errors.length() > 0) {
-            final String errorString = "Errors returned from beets: \n" + errors;
-            logger.error(errorString);
-            audit.add(new ErrorEntry(errorString, null));
-        }
+        final List<String> stdout = run(argArray);
         final Path newPath = moveOutOfTemp(to);
         if (stdout.contains("Skipping.")) {
             return handleSkip(newPath, stdout);
@@ -84,6 +84,16 @@ public class Beets extends MoveOperator {
         return to;
     }
 
+    private List<String> run(final String[] argArray) throws IOException {
+        final ProcessRunner.Result result = ProcessRunner.run("beets", Arrays.asList(argArray), timeout, idleTimeout);
+        if (!result.getStderr().isEmpty()) {
+            final String errorString = "Errors returned from beets: \n" + String.join("\n", result.getStderr());
+            logger.error(errorString);
+            audit.add(new ErrorEntry(errorString, null));
+        }
+        return result.getStdout();
+    }
+
     private Path moveOutOfTemp(final Path to) throws IOException {
         final Path path = Paths.get(to.toString().replace(tempPath, ""));
         return move.operate(to, path);
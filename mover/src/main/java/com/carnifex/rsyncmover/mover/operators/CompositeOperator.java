@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class CompositeOperator extends MoveOperator {
@@ -28,22 +29,94 @@ public class CompositeOperator extends MoveOperator {
 
     @Override
     protected Path operate(Path from, Path to) throws IOException {
+        return operate(from, to, null);
+    }
+
+    @Override
+    protected Path operate(final Path from, final Path to, final Stages stages) throws IOException {
         final List<Path> results = new ArrayList<>();
-        Path result = from;
+        if (stages != null) {
+            results.addAll(stages.getCompleted());
+        } else {
+            results.add(from);
+        }
+        // carry on from wherever the last stage to finish left it
+        Path result = results.get(results.size() - 1);
+        while (results.size() <= composites.size()) {
+            result = operateStage(to, results, stages);
+        }
+        return result;
+    }
+
+    @Override
+    public Path operateStage(final Path from, final Path to, final Stages stages) throws IOException {
+        return operateStage(to, new ArrayList<>(stages.getCompleted()), stages);
+    }
+
+    // the next operator, from wherever the one before it left the move
+    private Path operateStage(final Path to, final List<Path> results, final Stages stages) throws IOException {
+        final MoveOperator operator = composites.get(results.size() - 1);
+        final Path previous = results.get(results.size() - 1);
+        logger.debug("Composite operator " + compositeName + " using operator " + operator.getMethod() + " from " + previous + " to " + to);
+        Path result;
+        if (operator instanceof StatefulOperator) {
+            result = ((StatefulOperator) operator).operateStatefully(previous, to, results);
+        } else {
+            result = operator.operate(previous, to);
+        }
+        result = result.toAbsolutePath();
         results.add(result);
-        for (final MoveOperator operator : composites) {
-            logger.debug("Composite operator " + compositeName + " using operator " + operator.getMethod() + " from " + result + " to " + from);
-            if (operator instanceof StatefulOperator) {
-                result = ((StatefulOperator) operator).operateStatefully(result, to, results);
-            } else {
-                result = operator.operate(result, to);
-            }
-            result = result.toAbsolutePath();
-            results.add(result);
+        if (stages != null) {
+            stages.completed(result);
         }
         return result;
     }
 
+    // they're all at the same stage, so they're all handed to that stage's operator together
+    @Override
+    public List<CompletableFuture<Path>> operateStages(final List<Path> from, final List<Path> to, final List<? extends Stages> stages) {
+        final MoveOperator operator = composites.get(stages.get(0).getCompleted().size() - 1);
+        if (operator instanceof StatefulOperator) {
+            // each needs its own results so far, so they're done one at a time
+            final List<CompletableFuture<Path>> results = new ArrayList<>();
+            for (int i = 0; i < stages.size(); i++) {
+                final CompletableFuture<Path> result = new CompletableFuture<>();
+                try {
+                    result.complete(operateStage(from.get(i), to.get(i), stages.get(i)));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+                results.add(result);
+            }
+            return results;
+        }
+        final List<Path> previous = new ArrayList<>();
+        stages.forEach(moveStages -> previous.add(moveStages.getCompleted().get(moveStages.getCompleted().size() - 1)));
+        logger.debug("Composite operator " + compositeName + " using operator " + operator.getMethod() + " on " + previous.size() + " moves");
+        return completed(operator.operateBatch(previous, to), stages);
+    }
+
+    @Override
+    public int getBatchSize(final int stage) {
+        return composites.get(stage).getBatchSize(0);
+    }
+
+    @Override
+    public long getBatchWait(final int stage) {
+        return composites.get(stage).getBatchWait(0);
+    }
+
+    @Override
+    public int getStageCount() {
+        return composites.size();
+    }
+
+    // only the first operator gets the source, the rest work on wherever it put it
+    @Override
+    public boolean consumesSource() {
+        return composites != null && composites.get(0).consumesSource();
+    }
+
     @Override
     public String getMethod() {
         return compositeName;
@@ -2,28 +2,33 @@ package com.carnifex.rsyncmover.mover.operators;
 
 
 import com.carnifex.rsyncmover.audit.Audit;
-import org.apache.commons.io.FileUtils;
+import com.carnifex.rsyncmover.mover.io.CopyEngine;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Locale;
 
 public class Copy extends MoveOperator {
 
+    private static final String REFLINK = "reflink:";
+
+    private final CopyEngine.Reflink reflink;
+
     private Copy(final Audit audit, final List<String> additionalArguments) {
         super(audit, additionalArguments);
+        // reflink:auto clones the data on file systems that can, reflink:always fails the copy if it can't
+        final String reflinkArg = additionalArguments == null ? null : additionalArguments.stream()
+                .filter(arg -> arg.startsWith(REFLINK))
+                .map(arg -> arg.substring(REFLINK.length()))
+                .findFirst().orElse(null);
+        this.reflink = reflinkArg == null ? CopyEngine.Reflink.NEVER : CopyEngine.Reflink.valueOf(reflinkArg.toUpperCase(Locale.ROOT));
     }
 
     @Override
     public Path operate(final Path from, final Path to) throws IOException {
         logger.info("Copying " + from + " to " + to);
-        if (from.toFile().isDirectory()) {
-            FileUtils.copyDirectory(from.toFile(), to.toFile());
-        } else {
-            Files.copy(from, to);
-        }
-        return to;
+        return CopyEngine.copy(from, to, reflink);
     }
 
     @Override
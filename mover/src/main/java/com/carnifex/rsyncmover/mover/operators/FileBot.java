@@ -4,32 +4,50 @@ package com.carnifex.rsyncmover.mover.operators;
 import com.carnifex.rsyncmover.audit.Audit;
 import com.carnifex.rsyncmover.audit.entry.DuplicateEntry;
 import com.carnifex.rsyncmover.audit.entry.ErrorEntry;
+import com.carnifex.rsyncmover.mover.io.ProcessRunner;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+// renames with filebot. filebot's a jvm that takes seconds to start, so with batch:N, up to N files that have queued
+// for it, waiting up to batchWait:S seconds (10 by default) for that many, are renamed together by one filebot, and
+// what it says it did with each is matched back to the file. directories are always renamed on their own, as
+// filebot's format is changed for them
 public class FileBot extends MoveOperator {
 
     private static final String RENAME = "-rename";
+    private static final String BATCH = "batch:";
+    private static final String BATCH_WAIT = "batchWait:";
+    private static final long DEFAULT_BATCH_WAIT = 10;
+    private static final String TIMEOUT = "timeout:";
+    private static final String IDLE_TIMEOUT = "idleTimeout:";
+    private static final long DEFAULT_TIMEOUT = 1800;
+    private static final long DEFAULT_IDLE_TIMEOUT = 600;
     // visible for testing
     final List<String> additionalArguments;
     private String filebotPath = "filebot";
-    private final Pattern moveTargetRegex = Pattern.compile("\\[MOVE\\].*?\\[.*?\\] to \\[(.*?)\\]");
+    private final int batchSize;
+    private final long batchWait;
+    private final long timeout;
+    private final long idleTimeout;
+    private final Pattern moveTargetRegex = Pattern.compile("\\[MOVE\\].*?\\[(.*?)\\] to \\[(.*)\\]");
     private final Pattern formatDetectionRegex = Pattern.compile("--format");
     private final Pattern formatModificationRegex = Pattern.compile("(\"*)(.*)");
     private final Pattern pathFindingRegex;
@@ -37,6 +55,10 @@ public class FileBot extends MoveOperator {
 
     private FileBot() {
         this.additionalArguments = null;
+        this.batchSize = 1;
+        this.batchWait = 0;
+        this.timeout = 0;
+        this.idleTimeout = 0;
         this.pathFindingRegex = null;
         this.move = null;
     }
@@ -44,6 +66,11 @@ public class FileBot extends MoveOperator {
     private FileBot(final Audit audit, final List<String> additionalArguments) {
         super(audit, additionalArguments);
         this.additionalArguments = new ArrayList<>(additionalArguments != null ? additionalArguments : Collections.emptyList());
+        // these are for us rather than filebot
+        this.batchSize = Integer.parseInt(removeArgument(this.additionalArguments, BATCH, "1"));
+        this.batchWait = TimeUnit.SECONDS.toMillis(Long.parseLong(removeArgument(this.additionalArguments, BATCH_WAIT, String.valueOf(DEFAULT_BATCH_WAIT))));
+        this.timeout = TimeUnit.SECONDS.toMillis(Long.parseLong(removeArgument(this.additionalArguments, TIMEOUT, String.valueOf(DEFAULT_TIMEOUT))));
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(removeArgument(this.additionalArguments, IDLE_TIMEOUT, String.valueOf(DEFAULT_IDLE_TIMEOUT))));
         this.pathFindingRegex = Pattern.compile("(.*)\\" + File.separator + "(.*)\\" + File.separator +
                 "..\\" + File.separator + "(.*)\\" + File.separator + "(.*\\..*)");
         final Iterator<String> iter = this.additionalArguments.iterator();
@@ -90,24 +117,89 @@ public class FileBot extends MoveOperator {
         return exec(to, filebotPath, RENAME, preparePath(to)).orElse(to);
     }
 
+    // the files are renamed by one filebot, and each directory by one of its own
+    @Override
+    protected List<CompletableFuture<Path>> operateBatch(final List<Path> from, final List<Path> to) {
+        final List<CompletableFuture<Path>> results = new ArrayList<>();
+        final Map<Path, CompletableFuture<Path>> files = new LinkedHashMap<>();
+        for (int i = 0; i < from.size(); i++) {
+            final CompletableFuture<Path> result = new CompletableFuture<>();
+            results.add(result);
+            if (from.size() > 1 && !Files.isDirectory(to.get(i))) {
+                files.put(to.get(i), result);
+                continue;
+            }
+            try {
+                result.complete(operate(from.get(i), to.get(i)));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+        if (!files.isEmpty()) {
+            renameBatch(files);
+        }
+        return results;
+    }
+
+    @Override
+    public int getBatchSize(final int stage) {
+        return batchSize;
+    }
+
+    @Override
+    public long getBatchWait(final int stage) {
+        return batchWait;
+    }
+
+    // filebot's run without a shell, so the path's passed as it is; only windows' command line needs it quoted
     private String preparePath(final Path to) {
-        return isWindows ? "\"" + to.toString() + "\"" : to.toString().replaceAll(" ", "\\ ");
+        return isWindows ? "\"" + to.toString() + "\"" : to.toString();
     }
 
     private Optional<Path> exec(final Path to, final String... args) throws IOException {
         final boolean isDirectory = Files.isDirectory(to);
-        final String[] argArray = buildArgArray(isDirectory, args);
-        logger.trace("Executing \"" + Stream.of(argArray).collect(Collectors.joining(" ")) + "\"");
-        final Process exec = Runtime.getRuntime().exec(argArray);
-        final List<String> stdout = new BufferedReader(new InputStreamReader(exec.getInputStream())).lines().collect(Collectors.toList());
-        final Optional<Path> newPath = findNewPath(stdout);
-        final String errors = new BufferedReader(new InputStreamReader(exec.getErrorStream())).lines().collect(Collectors.joining("\n"));
-        if (errors != null && errors.length() > 0) {
-            final String errorString = "Errors returned from filebot: \n" + errors;
+        return afterRename(to, isDirectory, run(buildArgArray(isDirectory, args)));
+    }
+
+    private void renameBatch(final Map<Path, CompletableFuture<Path>> files) {
+        final List<String> args = new ArrayList<>(Arrays.asList(filebotPath, RENAME));
+        files.keySet().forEach(file -> args.add(preparePath(file)));
+        logger.info("Using filebot on " + files.size() + " files in one batch");
+        final List<String> stdout;
+        try {
+            stdout = run(buildArgArray(false, args.toArray(new String[args.size()])));
+        } catch (IOException | RuntimeException e) {
+            files.values().forEach(result -> result.completeExceptionally(e));
+            return;
+        }
+        files.forEach((file, result) -> {
+            try {
+                result.complete(afterRename(file, false, linesFor(file, stdout)).orElse(file));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    // what filebot said about this one of the files it was given, which names it, as the file it was moving
+    // visible for testing
+    List<String> linesFor(final Path path, final List<String> stdout) {
+        final String name = "[" + path.toString() + "]";
+        return stdout.stream().filter(line -> line.contains(name)).collect(Collectors.toList());
+    }
+
+    private List<String> run(final String[] argArray) throws IOException {
+        final ProcessRunner.Result result = ProcessRunner.run("filebot", Arrays.asList(argArray), timeout, idleTimeout);
+        if (!result.getStderr().isEmpty()) {
+            final String errorString = "Errors returned from filebot: \n" + String.join("\n", result.getStderr());
             logger.error(errorString);
             audit.add(new ErrorEntry(errorString, null));
         }
+        return result.getStdout();
+    }
 
+    private Optional<Path> afterRename(final Path to, final boolean isDirectory, final List<String> stdout) throws IOException {
+        final Optional<Path> newPath = findNewPath(stdout);
         if (!newPath.isPresent()) {
             // if it already exists, delete the file we moved
             if (stdout.stream().filter(line -> line.contains("already exists")).count() != 0) {
@@ -146,7 +238,6 @@ public class FileBot extends MoveOperator {
                 logger.warn(msg);
             }
         }
-        exec.destroy();
         return newPath;
     }
 
@@ -181,7 +272,7 @@ public class FileBot extends MoveOperator {
                 .filter(line -> line.startsWith("[MOVE]"))
                 .map(moveTargetRegex::matcher)
                 .filter(Matcher::find)
-                .map(matcher -> matcher.group(1))
+                .map(matcher -> matcher.group(2))
                 .collect(Collectors.toList());
         if (lines.size() > 0) {
             final boolean isFolder = lines.get(0).contains(".." + File.separator);
@@ -2,28 +2,22 @@ package com.carnifex.rsyncmover.mover.operators;
 
 
 import com.carnifex.rsyncmover.audit.Audit;
-import org.apache.commons.io.FileUtils;
+import com.carnifex.rsyncmover.mover.io.CopyEngine;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
 public class Move extends MoveOperator {
 
-    private Move(final Audit audit, final List<String> additionalArguments) {
+    protected Move(final Audit audit, final List<String> additionalArguments) {
         super(audit, additionalArguments);
     }
 
     @Override
     public Path operate(final Path from, final Path to) throws IOException {
         logger.info("Moving " + from + " to " + to);
-        if (from.toFile().isDirectory()) {
-            FileUtils.moveDirectory(from.toFile(), to.toFile());
-        } else {
-            Files.move(from, to);
-        }
-        return to;
+        return CopyEngine.move(from, to);
     }
 
     @Override
@@ -31,6 +25,11 @@ public class Move extends MoveOperator {
         return "move";
     }
 
+    @Override
+    public boolean consumesSource() {
+        return true;
+    }
+
     @Override
     public boolean shouldSetFilePermissions() {
         return true;
@@ -22,6 +22,7 @@ import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -49,13 +50,33 @@ public abstract class MoveOperator {
     }
 
     public Path move(final Path from, final Path to, final Set<PosixFilePermission> filePermissions, final Set<PosixFilePermission> folderPermissions, final UserPrincipal userPrincipal) throws IOException {
+        return move(from, to, filePermissions, folderPermissions, userPrincipal, null);
+    }
+
+    // stages, if given, is told as each stage of the move finishes, and if it already has some then the move is picked
+    // up after the last of them rather than started again
+    public Path move(final Path from, final Path to, final Set<PosixFilePermission> filePermissions, final Set<PosixFilePermission> folderPermissions, final UserPrincipal userPrincipal, final Stages stages) throws IOException {
         final long startTime = System.currentTimeMillis();
-        if (from.equals(to)) {
+        prepare(from, to, filePermissions, folderPermissions, userPrincipal, stages);
+        final Path path = operate(from, to, stages);
+        finish(from, path, startTime, filePermissions, folderPermissions, userPrincipal);
+        return path;
+    }
+
+    // a move can also be made a stage at a time, possibly on different threads: prepare, then operateStage until
+    // stages has them all, then finish with where the last one left it
+    public void prepare(final Path from, final Path to, final Set<PosixFilePermission> filePermissions, final Set<PosixFilePermission> folderPermissions, final UserPrincipal userPrincipal, final Stages stages) throws IOException {
+        // the target may well exist already if an earlier stage put it there
+        final boolean resuming = stages != null && stages.getCompleted().size() > 1;
+        if (resuming) {
+            logger.info(getMethod() + ": Resuming move of " + from + " after stage " + (stages.getCompleted().size() - 1));
+        }
+        if (!resuming && from.equals(to)) {
             final String msg = getMethod() + ": Origin and destination are the same, not moving: " + to;
             logger.info(msg);
             throw new IOException(msg);
         }
-        if (to.toFile().exists()) {
+        if (!resuming && to.toFile().exists()) {
             final String msg = getMethod() + ": File already exists, not moving: " + to;
             logger.error(msg);
             throw new IOException(msg);
@@ -69,14 +90,96 @@ public abstract class MoveOperator {
                 Permissions.setPermissions(parent, filePermissions, folderPermissions, userPrincipal);
             }
         }
-        final Path path = operate(from, to);
+    }
+
+    // runs the stage after the last one stages has, and tells it where that left the move
+    public Path operateStage(final Path from, final Path to, final Stages stages) throws IOException {
+        return operate(from, to, stages);
+    }
+
+    public void finish(final Path from, final Path path, final long startTime, final Set<PosixFilePermission> filePermissions, final Set<PosixFilePermission> folderPermissions, final UserPrincipal userPrincipal) {
         logger.info("Moved " + from + " in " + (System.currentTimeMillis() - startTime) / 1000 + "s");
         if (filePermissions != null && shouldSetFilePermissions() && !isWindows) {
             Permissions.setPermissions(path, filePermissions, folderPermissions, userPrincipal);
         }
+    }
+
+    protected Path operate(final Path from, final Path to, final Stages stages) throws IOException {
+        final Path path = operate(from, to);
+        if (stages != null) {
+            stages.completed(path.toAbsolutePath());
+        }
         return path;
     }
 
+    // runs the stage after the last one each of stages has for several moves at once, all at the same stage. each result
+    // is where that move was left, or what it failed with
+    public List<CompletableFuture<Path>> operateStages(final List<Path> from, final List<Path> to, final List<? extends Stages> stages) {
+        return completed(operateBatch(from, to), stages);
+    }
+
+    // operates on several at once, for operators with a batch size above one. by default they're done one at a time
+    protected List<CompletableFuture<Path>> operateBatch(final List<Path> from, final List<Path> to) {
+        final List<CompletableFuture<Path>> results = new ArrayList<>();
+        for (int i = 0; i < from.size(); i++) {
+            final CompletableFuture<Path> result = new CompletableFuture<>();
+            try {
+                result.complete(operate(from.get(i), to.get(i)));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    // tells each of stages where the batch left it
+    protected static List<CompletableFuture<Path>> completed(final List<CompletableFuture<Path>> results, final List<? extends Stages> stages) {
+        final List<CompletableFuture<Path>> completed = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            final Stages moveStages = stages.get(i);
+            completed.add(results.get(i).thenApply(path -> {
+                moveStages.completed(path.toAbsolutePath());
+                return path;
+            }));
+        }
+        return completed;
+    }
+
+    // how many moves the given stage, counting from 0, runs at once. a stage that takes more than one is handed whatever
+    // has queued for it, waiting up to getBatchWait milliseconds for enough to arrive, through operateStages
+    public int getBatchSize(final int stage) {
+        return 1;
+    }
+
+    public long getBatchWait(final int stage) {
+        return 0;
+    }
+
+    // how many stages a move with this operator has, each of which can be resumed after
+    public int getStageCount() {
+        return 1;
+    }
+
+    // whether the source is gone once the operator's done with it, as it is after a move, rather than left where it was
+    public boolean consumesSource() {
+        return false;
+    }
+
+    // takes the first argument starting with prefix out of the arguments and returns what follows the prefix, for
+    // arguments that are for the operator rather than whatever it runs
+    protected static String removeArgument(final List<String> additionalArguments, final String prefix, final String defaultValue) {
+        final Iterator<String> iter = additionalArguments.iterator();
+        while (iter.hasNext()) {
+            final String next = iter.next();
+            if (next.startsWith(prefix)) {
+                iter.remove();
+                return next.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
     public static MoveOperator create(final List<RsyncMover.Movers.Mover.MoveOperators.MoveOperator> operators, final Audit audit) {
         if (operators.size() == 1) {
             return create(operators.get(0).getOperator(), operators.get(0).getAdditionalArguments().getArg(), audit);
@@ -0,0 +1,14 @@
+package com.carnifex.rsyncmover.mover.operators;
+
+
+import java.nio.file.Path;
+import java.util.List;
+
+// the results of a move's stages so far, starting with the path it was moved from, so a composite move that was cut
+// off part way through can carry on from the last stage that finished
+public interface Stages {
+
+    List<Path> getCompleted();
+
+    void completed(final Path result);
+}
@@ -1,7 +1,7 @@
 package com.carnifex.rsyncmover.mover.operators;
 
 import com.carnifex.rsyncmover.audit.Audit;
-import org.apache.commons.io.FileUtils;
+import com.carnifex.rsyncmover.mover.io.CopyEngine;
 import org.apache.log4j.Logger;
 
 import java.io.File;
@@ -48,11 +48,7 @@ public class TvSeries extends MoveOperator {
     }
 
     void doMove(final Path from, final Path p) throws IOException {
-        if (from.toFile().isDirectory()) {
-            FileUtils.moveDirectory(from.toFile(), p.toFile());
-        } else {
-            Files.move(from, p);
-        }
+        CopyEngine.move(from, p);
     }
 
     // visible for testing
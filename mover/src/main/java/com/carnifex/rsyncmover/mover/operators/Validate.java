@@ -2,21 +2,85 @@ package com.carnifex.rsyncmover.mover.operators;
 
 
 import com.carnifex.rsyncmover.audit.Audit;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+// checks that what the last operator produced has the same contents as what it started from. the files on both sides
+// are hashed at the same time, and a directory's hash is built from the names and hashes of what's in it, so a
+// mismatch can say which files differ. algorithm:sha1 (the default), algorithm:sha256 or algorithm:murmur3, which
+// is much quicker but only guards against accidents rather than tampering
 public class Validate extends MoveOperator implements StatefulOperator {
 
+    private static final String ALGORITHM = "algorithm:";
+    private static final int HASH_THREADS = 4;
+    private static final int READ_BUFFER = 1024 * 1024;
+    private static final int CACHED_DIGESTS = 10000;
+    private static final int MISMATCHES_REPORTED = 10;
+    private static final ExecutorService hashPool;
+    // digests of files that have been hashed, by algorithm and file (device and inode where there are such things),
+    // along with the size, modified time and changed time they had, so a file that's validated again isn't read again.
+    // a copy keeps the modified time of what it was copied from, but not the changed time, so a reused inode holding a
+    // new copy can't be mistaken for the file it used to be. what the last operator wrote isn't looked up at all
+    private static final Map<String, CachedDigest> digestCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedDigest>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, CachedDigest> eldest) {
+                    return size() > CACHED_DIGESTS;
+                }
+            });
+
+    static {
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        hashPool = new ThreadPoolExecutor(HASH_THREADS, HASH_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    final Thread thread = new Thread(r, "HashThread" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private final Algorithm algorithm;
+
     public Validate(final Audit audit, final List<String> additionalArguments) {
         super(audit, additionalArguments);
+        final String algorithmArg = additionalArguments == null ? null : additionalArguments.stream()
+                .filter(arg -> arg.startsWith(ALGORITHM))
+                .map(arg -> arg.substring(ALGORITHM.length()))
+                .findFirst().orElse(null);
+        this.algorithm = algorithmArg == null ? Algorithm.SHA1 : Algorithm.valueOf(algorithmArg.toUpperCase(Locale.ROOT));
     }
 
     @Override
@@ -42,35 +106,201 @@ public class Validate extends MoveOperator implements StatefulOperator {
             return to;
         }
         final Path previous = previousPaths.get(previousPaths.size() - 2);
-        final String previousHash = hash(previous);
-        final String currentHash = hash(from);
+        final long start = System.currentTimeMillis();
+        final Map<Path, BasicFileAttributes> previousFiles = list(previous);
+        final Map<Path, BasicFileAttributes> currentFiles = list(from);
+        final List<Path> changedType = previousFiles.keySet().stream()
+                .filter(path -> currentFiles.containsKey(path) && previousFiles.get(path).isDirectory() != currentFiles.get(path).isDirectory())
+                .collect(Collectors.toList());
+        if (!changedType.isEmpty()) {
+            throw new RuntimeException("Contents of " + from + " and " + previous + " do not match; files and directories swapped "
+                    + report(changedType));
+        }
+        if (!previousFiles.keySet().equals(currentFiles.keySet())) {
+            final List<Path> missing = previousFiles.keySet().stream().filter(path -> !currentFiles.containsKey(path)).collect(Collectors.toList());
+            final List<Path> added = currentFiles.keySet().stream().filter(path -> !previousFiles.containsKey(path)).collect(Collectors.toList());
+            throw new RuntimeException("Contents of " + from + " and " + previous + " do not match; missing " + report(missing)
+                    + ", added " + report(added));
+        }
+        // both sides go in the queue together, so they're read at the same time. the side the last operator has just
+        // written is always read, as that's the side being checked
+        final Map<Path, Future<HashCode>> previousHashing = submit(previous, previousFiles, true);
+        final Map<Path, Future<HashCode>> currentHashing = submit(from, currentFiles, false);
+        final Map<Path, HashCode> previousDigests = await(previousHashing);
+        final Map<Path, HashCode> currentDigests = await(currentHashing);
 
-        logger.debug("Previous hash: " + previousHash + "; new hash: " + currentHash);
-        if (!previousHash.equals(currentHash)) {
-            throw new RuntimeException("Hashes of files " + from + ", " + previous + " do not match; " + previousHash + ", " + currentHash);
+        final List<Path> mismatched = previousDigests.keySet().stream()
+                .filter(path -> !previousDigests.get(path).equals(currentDigests.get(path)))
+                .collect(Collectors.toList());
+        final Map<Path, List<Path>> children = children(previousFiles);
+        final HashCode previousHash = digest(Paths.get(""), children, previousDigests);
+        final HashCode currentHash = digest(Paths.get(""), children, currentDigests);
+        logger.debug("Previous hash: " + previousHash + "; new hash: " + currentHash + "; took " + (System.currentTimeMillis() - start) + "ms");
+        if (!mismatched.isEmpty() || !previousHash.equals(currentHash)) {
+            throw new RuntimeException("Hashes of files " + from + ", " + previous + " do not match; " + previousHash + ", "
+                    + currentHash + "; differing files " + report(mismatched));
         }
         return to;
     }
 
-    private String hash(final Path path) {
+    // hashes each of the files on the pool, as a validate would the side that's just been written
+    Map<Path, HashCode> hashFiles(final Collection<Path> files) throws IOException {
+        final Map<Path, Future<HashCode>> hashing = new HashMap<>();
+        for (final Path file : files) {
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            hashing.put(file, hashPool.submit(() -> hash(file, attributes, false)));
+        }
+        return await(hashing);
+    }
+
+    HashFunction getHashFunction() {
+        return algorithm.function;
+    }
+
+    static String report(final List<Path> paths) {
+        return paths.stream().limit(MISMATCHES_REPORTED).map(Path::toString).collect(Collectors.joining(", ", "[", "]"))
+                + (paths.size() > MISMATCHES_REPORTED ? " and " + (paths.size() - MISMATCHES_REPORTED) + " more" : "");
+    }
+
+    // every regular file and directory by where it is relative to the path, with the path itself as the empty path
+    private static Map<Path, BasicFileAttributes> list(final Path path) throws IOException {
+        final Map<Path, BasicFileAttributes> files = new TreeMap<>();
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        files.put(Paths.get(""), attributes);
+        if (attributes.isDirectory()) {
+            list(path, path, files);
+        }
+        return files;
+    }
+
+    private static void list(final Path root, final Path directory, final Map<Path, BasicFileAttributes> files) throws IOException {
+        try (final DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (final Path child : children) {
+                final BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                files.put(root.relativize(child), attributes);
+                if (attributes.isDirectory()) {
+                    list(root, child, files);
+                }
+            }
+        }
+    }
+
+    private Map<Path, Future<HashCode>> submit(final Path root, final Map<Path, BasicFileAttributes> files, final boolean useCache) {
+        final Map<Path, Future<HashCode>> hashing = new HashMap<>();
+        files.forEach((relative, attributes) -> {
+            if (!attributes.isDirectory()) {
+                hashing.put(relative, hashPool.submit(() -> hash(root.resolve(relative), attributes, useCache)));
+            }
+        });
+        return hashing;
+    }
+
+    private static Map<Path, HashCode> await(final Map<Path, Future<HashCode>> hashing) throws IOException {
+        final Map<Path, HashCode> digests = new HashMap<>();
         try {
-            if (Files.isDirectory(path)) {
-                return Files.list(path).sorted().parallel().map(this::hash).collect(Collectors.joining());
+            for (final Map.Entry<Path, Future<HashCode>> entry : hashing.entrySet()) {
+                digests.put(entry.getKey(), entry.getValue().get());
             }
-            try (final InputStream inputStream = Files.newInputStream(path)) {
-                logger.trace("Started hashing " + path);
-                final MessageDigest messageDigest = MessageDigest.getInstance("SHA1");
-                int r;
-                final byte[] b = new byte[1024];
-                while ((r = inputStream.read(b)) != -1) {
-                    messageDigest.update(b, 0, r);
-                }
-                final String hash = Base64.getEncoder().encodeToString(messageDigest.digest());
-                logger.trace("Hashed path " + path + ": " + hash);
-                return hash;
+        } catch (InterruptedException e) {
+            hashing.values().forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted whilst validating", e);
+        } catch (ExecutionException e) {
+            hashing.values().forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException(e.getCause());
+        }
+        return digests;
+    }
+
+    // what's directly in each directory, in order
+    private static Map<Path, List<Path>> children(final Map<Path, BasicFileAttributes> files) {
+        final Map<Path, List<Path>> children = new HashMap<>();
+        files.forEach((path, attributes) -> {
+            if (attributes.isDirectory()) {
+                children.putIfAbsent(path, new ArrayList<>());
+            }
+            if (!path.toString().isEmpty()) {
+                final Path parent = path.getParent() != null ? path.getParent() : Paths.get("");
+                children.computeIfAbsent(parent, ignore -> new ArrayList<>()).add(path);
+            }
+        });
+        return children;
+    }
+
+    // a file's digest is its contents', a directory's covers the names and digests of everything in it, in order
+    private HashCode digest(final Path relative, final Map<Path, List<Path>> children, final Map<Path, HashCode> fileDigests) {
+        if (!children.containsKey(relative)) {
+            return fileDigests.get(relative);
+        }
+        final Hasher hasher = algorithm.function.newHasher();
+        for (final Path child : children.get(relative)) {
+            hasher.putString(child.getFileName().toString(), StandardCharsets.UTF_8);
+            hasher.putBytes(digest(child, children, fileDigests).asBytes());
+        }
+        return hasher.hash();
+    }
+
+    // the digest's always cached, but only looked up if useCache is set
+    private HashCode hash(final Path file, final BasicFileAttributes attributes, final boolean useCache) throws IOException {
+        final String key = algorithm + ":" + (attributes.fileKey() != null ? attributes.fileKey() : file.toAbsolutePath());
+        final long modified = attributes.lastModifiedTime().toMillis();
+        final long changed = getChangedTime(file);
+        final CachedDigest cached = useCache ? digestCache.get(key) : null;
+        if (cached != null && cached.size == attributes.size() && cached.modified == modified && cached.changed == changed) {
+            logger.trace("Using cached hash for " + file);
+            return cached.digest;
+        }
+        logger.trace("Started hashing " + file);
+        final Hasher hasher = algorithm.function.newHasher();
+        // a large buffer, read straight from the channel, rather than lots of small reads through a stream
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                hasher.putBytes(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        final HashCode digest = hasher.hash();
+        digestCache.put(key, new CachedDigest(attributes.size(), modified, changed, digest));
+        logger.trace("Hashed path " + file + ": " + digest);
+        return digest;
+    }
+
+    // the inode's changed time, which unlike the modified time can't be set back, or 0 where there isn't one
+    private static long getChangedTime(final Path file) throws IOException {
+        try {
+            return ((FileTime) Files.getAttribute(file, "unix:ctime")).to(TimeUnit.NANOSECONDS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    enum Algorithm {
+        SHA1(Hashing.sha1()),
+        SHA256(Hashing.sha256()),
+        MURMUR3(Hashing.murmur3_128());
+
+        private final HashFunction function;
+
+        Algorithm(final HashFunction function) {
+            this.function = function;
+        }
+    }
+
+    private static final class CachedDigest {
+        private final long size;
+        private final long modified;
+        private final long changed;
+        private final HashCode digest;
+
+        private CachedDigest(final long size, final long modified, final long changed, final HashCode digest) {
+            this.size = size;
+            this.modified = modified;
+            this.changed = changed;
+            this.digest = digest;
         }
     }
 }
@@ -0,0 +1,84 @@
+package com.carnifex.rsyncmover.mover.operators;
+
+
+import com.carnifex.rsyncmover.audit.Audit;
+import com.carnifex.rsyncmover.mover.io.CopyEngine;
+import com.google.common.hash.HashCode;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// a copy that checks itself, for use in place of copy then validate. the source is hashed as it's copied rather than
+// read again afterwards, and each file is forced to disk as it's written. with verify:sync the hashes taken on the way
+// are trusted; with verify:read (the default) the copy is also read back and hashed to compare. forcing it to disk
+// doesn't drop it from the page cache, so the read back will most likely come from memory - it proves what the file
+// system will hand back for the copy, which catches a short or misplaced write, but not the disk corrupting it later.
+// a copy that doesn't match is deleted. takes the same algorithm: argument as validate
+public class VerifiedCopy extends MoveOperator {
+
+    private static final String VERIFY = "verify:";
+
+    private final Validate validate;
+    private final Verify verify;
+
+    public VerifiedCopy(final Audit audit, final List<String> additionalArguments) {
+        super(audit, additionalArguments);
+        this.validate = new Validate(audit, additionalArguments);
+        final String verifyArg = additionalArguments == null ? null : additionalArguments.stream()
+                .filter(arg -> arg.startsWith(VERIFY))
+                .map(arg -> arg.substring(VERIFY.length()))
+                .findFirst().orElse(null);
+        this.verify = verifyArg == null ? Verify.READ : Verify.valueOf(verifyArg.toUpperCase(Locale.ROOT));
+    }
+
+    @Override
+    protected Path operate(final Path from, final Path to) throws IOException {
+        logger.info("Copying and verifying " + from + " to " + to);
+        final long start = System.currentTimeMillis();
+        // forced either way, so any error writing it out is reported here rather than lost
+        final Map<Path, HashCode> copied = CopyEngine.copyHashing(from, to, validate.getHashFunction(), true);
+        if (verify == Verify.READ) {
+            final List<Path> mismatched;
+            try {
+                final Map<Path, HashCode> read = validate.hashFiles(copied.keySet());
+                mismatched = copied.keySet().stream()
+                        .filter(path -> !copied.get(path).equals(read.get(path)))
+                        .sorted()
+                        .collect(Collectors.toList());
+            } catch (IOException | RuntimeException e) {
+                FileUtils.deleteQuietly(to.toFile());
+                throw e;
+            }
+            if (!mismatched.isEmpty()) {
+                // as a failed copy would be, so it isn't mistaken for a good one or in the way of trying again
+                FileUtils.deleteQuietly(to.toFile());
+                throw new RuntimeException("Hashes of " + to + " do not match those of " + from + " taken while copying; differing files "
+                        + Validate.report(mismatched) + "; deleted the copy");
+            }
+        }
+        logger.debug("Copied and verified " + copied.size() + " files from " + from + " in " + (System.currentTimeMillis() - start) + "ms");
+        return to;
+    }
+
+    @Override
+    public String getMethod() {
+        return "verifiedcopy";
+    }
+
+    @Override
+    public boolean shouldSetFilePermissions() {
+        return true;
+    }
+
+    private enum Verify {
+        // read the copy back and hash it again
+        READ,
+        // trust the hashes taken on the way
+        SYNC
+    }
+}
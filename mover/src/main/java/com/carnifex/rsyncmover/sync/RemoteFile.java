@@ -0,0 +1,70 @@
+package com.carnifex.rsyncmover.sync;
+
+
+import com.carnifex.rsyncmover.mover.io.MoverMatcher;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+// a file or directory on a server as it was listed. a directory's contents are only listed the first time something
+// asks for them, so matching can stop without walking the whole tree
+public class RemoteFile implements MoverMatcher.Listing {
+
+    private final String name;
+    private final String path;
+    private final boolean directory;
+    // seconds, as sftp reports it
+    private final long modified;
+    private final long size;
+    private final Function<RemoteFile, List<RemoteFile>> lister;
+    private volatile List<RemoteFile> children;
+
+    RemoteFile(final String name, final String path, final boolean directory, final long modified, final long size,
+               final Function<RemoteFile, List<RemoteFile>> lister) {
+        this.name = name;
+        this.path = path;
+        this.directory = directory;
+        this.modified = modified;
+        this.size = size;
+        this.lister = lister;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public List<RemoteFile> getChildren() {
+        if (!directory) {
+            return Collections.emptyList();
+        }
+        if (children == null) {
+            children = lister.apply(this);
+        }
+        return children;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
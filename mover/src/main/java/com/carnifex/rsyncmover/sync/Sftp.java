@@ -23,7 +23,9 @@ import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
@@ -48,6 +50,11 @@ public class Sftp {
     private final List<Notifier> notifiers;
     private final Lock simultaneousLock;
     private final TotalDownloaded totalDownloaded;
+    // directory contents from previous listings, keyed by remote path
+    private final Map<String, CachedListing> listings;
+    // one session used for all the listing in a sync rather than connecting for each directory
+    private SshClient listingClient;
+    private SFTPClient listingSftp;
 
     public Sftp(final String server, final int port, final String remoteDirectory, final String remoteRealDirectory,
                 final String user, final String pass, final String hostKey,
@@ -68,6 +75,7 @@ public class Sftp {
         this.notifiers = notifiers;
         this.simultaneousLock = simultaneousLock;
         this.totalDownloaded = totalDownloaded;
+        this.listings = new ConcurrentHashMap<>();
         logger.info("Sftp client for server " + server + ":" + port + ", monitoring " + remoteDirectory + " successfully initialized");
     }
 
@@ -80,17 +88,82 @@ public class Sftp {
     }
 
     public List<String> listFiles() {
-        try (final SshClient sshClient = new SshClient();
-             final SFTPClient sftp = sshClient.getSftp()) {
-            final List<RemoteResourceInfo> ls = sftp.ls(remoteDirectory);
-            return ls.stream()
-                    .map(RemoteResourceInfo::getName)
-                    .collect(Collectors.toList());
+        try {
+            return listRemoteFiles().stream().map(RemoteFile::getName).collect(Collectors.toList());
+        } finally {
+            closeListingSession();
+        }
+    }
+
+    // the top level of the remote directory, with types, sizes and modified times. the contents of directories are
+    // listed over the same session when first asked for, until closeListingSession is called
+    public List<RemoteFile> listRemoteFiles() {
+        try {
+            final List<RemoteFile> files = toRemoteFiles(ls(remoteDirectory));
+            // forget anything that's no longer on the server
+            listings.keySet().removeIf(path -> files.stream().noneMatch(file -> path.startsWith(file.getPath())));
+            return files;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private List<RemoteFile> listDirectory(final RemoteFile directory) {
+        final CachedListing cached = listings.get(directory.getPath());
+        // a directory's time only changes when something directly in it does, so contents can only be reused if there
+        // are no subdirectories, and if the listing was taken after the second it was last modified in
+        if (cached != null && cached.modified == directory.getModified() && cached.listed / 1000 > cached.modified
+                && cached.children.stream().noneMatch(RemoteFile::isDirectory)) {
+            return cached.children;
+        }
+        try {
+            final long listed = System.currentTimeMillis();
+            final List<RemoteFile> children = toRemoteFiles(ls(directory.getPath()));
+            listings.put(directory.getPath(), new CachedListing(directory.getModified(), listed, children));
+            return children;
+        } catch (IOException e) {
+            throw new RuntimeException(server + ": Error listing " + directory.getPath(), e);
+        }
+    }
+
+    private List<RemoteFile> toRemoteFiles(final List<RemoteResourceInfo> ls) {
+        return ls.stream()
+                .map(info -> new RemoteFile(info.getName(), info.getPath(), info.isDirectory(),
+                        info.getAttributes().getMtime(), info.getAttributes().getSize(), this::listDirectory))
+                .collect(Collectors.toList());
+    }
+
+    private synchronized List<RemoteResourceInfo> ls(final String path) throws IOException {
+        try {
+            return getListingSftp().ls(path);
+        } catch (IOException | RuntimeException e) {
+            // the session may have been dropped since it was opened, so try once more on a new one
+            logger.debug(server + ": Error listing " + path + ", reconnecting", e);
+            closeListingSession();
+            return getListingSftp().ls(path);
+        }
+    }
+
+    private synchronized SFTPClient getListingSftp() {
+        if (listingSftp == null) {
+            listingClient = new SshClient();
+            listingSftp = listingClient.getSftp();
+        }
+        return listingSftp;
+    }
+
+    public synchronized void closeListingSession() {
+        if (listingClient != null) {
+            try {
+                listingClient.close();
+            } catch (Exception e) {
+                logger.debug(server + ": Error closing listing session", e);
+            }
+        }
+        listingClient = null;
+        listingSftp = null;
+    }
+
     private String removeSymlink(final String dir) {
         return remoteRealDirectory != null ? dir.replace(remoteDirectory, remoteRealDirectory) : dir;
     }
@@ -234,6 +307,18 @@ public class Sftp {
         }
     }
 
+    private static final class CachedListing {
+        private final long modified;
+        private final long listed;
+        private final List<RemoteFile> children;
+
+        private CachedListing(final long modified, final long listed, final List<RemoteFile> children) {
+            this.modified = modified;
+            this.listed = listed;
+            this.children = children;
+        }
+    }
+
     public class DownloadWatcher {
 
         private final String name;
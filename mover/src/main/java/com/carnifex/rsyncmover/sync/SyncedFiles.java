@@ -10,6 +10,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -22,13 +23,17 @@ public class SyncedFiles {
     private static final Logger logger = LogManager.getLogger();
     private static final String SERVER_SEPARATOR = ":::";
 
-    private volatile Map<String, Set<String>> synced;
+    // lookups read an immutable snapshot plus the concurrent set of additions since it was taken, so they never
+    // block on persisting and never see a set being modified. the snapshot is null until first read from disk
+    private volatile Map<String, Set<String>> snapshot;
+    // paths added since the current snapshot was taken
+    private final Map<String, Set<String>> added;
     private final Path persistLocation;
-    private volatile boolean passive;
     private final boolean enabled;
 
     public SyncedFiles(final Path persistLocation) {
-        this.synced = new ConcurrentHashMap<>();
+        this.snapshot = null;
+        this.added = new ConcurrentHashMap<>();
         this.persistLocation = persistLocation;
         if (persistLocation != null) {
             final File file = persistLocation.toFile();
@@ -50,70 +55,92 @@ public class SyncedFiles {
         } else {
             this.enabled = false;
         }
-        this.passive = this.enabled;
-
     }
 
     public boolean shouldDownload(final String serverName, final String path) {
         if (!enabled) {
             return true;
         }
-        depersist();
-        return !synced.getOrDefault(serverName, Collections.emptySet()).contains(path);
+        // check the additions first, as a concurrent persist publishes the new snapshot before clearing them
+        return !added.getOrDefault(serverName, Collections.emptySet()).contains(path)
+                && !getSnapshot().getOrDefault(serverName, Collections.emptySet()).contains(path);
     }
 
     public void addDownloadedPath(final String serverName, final String path) {
         if (!enabled) {
             return;
         }
-        depersist();
-        synced.computeIfAbsent(serverName, ignore -> new HashSet<>()).add(path);
+        added.computeIfAbsent(serverName, ignore -> ConcurrentHashMap.newKeySet()).add(path);
     }
 
     public void finished() {
         persist();
     }
 
-    private void persist() {
-        if (!passive && enabled) {
-            synchronized (this) {
-                if (!passive) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Persisting " + synced.values().stream().mapToInt(Set::size).sum() + " entries");
-                    }
-                    final String collect = synced.entrySet().stream()
-                            .flatMap(entry -> entry.getValue().stream().map(set -> entry.getKey() + SERVER_SEPARATOR + set))
-                            .sorted().collect(Collectors.joining("\n"));
-                    try {
-                        Files.write(persistLocation, collect.getBytes(), StandardOpenOption.TRUNCATE_EXISTING);
-                    } catch (Exception e) {
-                        logger.error("Exception encountered persisting downloaded files", e);
-                    }
-                    passive = true;
-                }
+    private Map<String, Set<String>> getSnapshot() {
+        final Map<String, Set<String>> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = freeze(depersist());
             }
+            return snapshot;
+        }
+    }
+
+    private synchronized void persist() {
+        if (!enabled || added.values().stream().allMatch(Set::isEmpty)) {
+            return;
+        }
+        // merge with what's on disk in case something else has written to the same file since we read it
+        final Map<String, Set<String>> merged = depersist();
+        if (snapshot != null) {
+            snapshot.forEach((server, paths) -> merged.computeIfAbsent(server, ignore -> new HashSet<>()).addAll(paths));
+        }
+        final Map<String, Set<String>> persisted = new HashMap<>();
+        added.forEach((server, paths) -> paths.forEach(path -> {
+            merged.computeIfAbsent(server, ignore -> new HashSet<>()).add(path);
+            persisted.computeIfAbsent(server, ignore -> new HashSet<>()).add(path);
+        }));
+        snapshot = freeze(merged);
+        // only remove what made it into the snapshot, anything added since stays for the next persist
+        persisted.forEach((server, paths) -> added.get(server).removeAll(paths));
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Persisting " + merged.values().stream().mapToInt(Set::size).sum() + " entries");
+        }
+        final String collect = merged.entrySet().stream()
+                .flatMap(entry -> entry.getValue().stream().map(set -> entry.getKey() + SERVER_SEPARATOR + set))
+                .sorted().collect(Collectors.joining("\n"));
+        try {
+            Files.write(persistLocation, collect.getBytes(), StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (Exception e) {
+            logger.error("Exception encountered persisting downloaded files", e);
         }
     }
 
-    private void depersist() {
-        if (passive && enabled) {
-            synchronized (this) {
-                if (passive) {
-                    try {
-                        final Map<String, Set<String>> newSynced = new ConcurrentHashMap<>();
-                        final List<String> entries = Files.readAllLines(persistLocation);
-                        logger.debug("Depersisted " + entries.size() + " entries");
-                        entries.forEach(string -> {
-                            final String[] split = string.split(SERVER_SEPARATOR);
-                            newSynced.computeIfAbsent(split[0], ignore -> new HashSet<>()).add(split[1]);
-                        });
-                        synced = newSynced;
-                    } catch (Exception e) {
-                        logger.error("Exception encountered depersisting downloaded files", e);
-                    }
-                    passive = false;
+    private Map<String, Set<String>> depersist() {
+        final Map<String, Set<String>> synced = new HashMap<>();
+        try {
+            final List<String> entries = Files.readAllLines(persistLocation);
+            logger.debug("Depersisted " + entries.size() + " entries");
+            entries.forEach(string -> {
+                final String[] split = string.split(SERVER_SEPARATOR, 2);
+                if (split.length == 2) {
+                    synced.computeIfAbsent(split[0], ignore -> new HashSet<>()).add(split[1]);
                 }
-            }
+            });
+        } catch (Exception e) {
+            logger.error("Exception encountered depersisting downloaded files", e);
         }
+        return synced;
+    }
+
+    private static Map<String, Set<String>> freeze(final Map<String, Set<String>> map) {
+        final Map<String, Set<String>> frozen = new HashMap<>();
+        map.forEach((server, paths) -> frozen.put(server, Collections.unmodifiableSet(new HashSet<>(paths))));
+        return Collections.unmodifiableMap(frozen);
     }
 }
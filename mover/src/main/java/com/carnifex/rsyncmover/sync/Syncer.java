@@ -24,7 +24,7 @@ import com.carnifex.rsyncmover.audit.entry.DownloadedEntry;
 import com.carnifex.rsyncmover.audit.entry.ErrorEntry;
 import com.carnifex.rsyncmover.audit.entry.SeenEntry;
 import com.carnifex.rsyncmover.mover.io.FileWatcher;
-import com.carnifex.rsyncmover.mover.io.Mover;
+import com.carnifex.rsyncmover.mover.io.MoverMatcher;
 import com.carnifex.rsyncmover.mover.io.MoverThread;
 import com.carnifex.rsyncmover.notifications.Notifier;
 import org.apache.logging.log4j.LogManager;
@@ -42,7 +42,7 @@ public class Syncer extends Thread {
     private volatile boolean running;
     private volatile boolean sleeping;
     private volatile boolean syncing;
-    private final List<Mover> movers;
+    private final MoverMatcher moverMatcher;
     private final long minimumSpace;
     private final Set<PosixFilePermission> filePermissions;
     private final boolean lazyPolling;
@@ -54,7 +54,7 @@ public class Syncer extends Thread {
 
     public Syncer(final List<String> dlDirs, final List<Sftp> sftps, final SyncedFiles syncedFiles, final int syncFrequency,
                   final boolean passivateEachTime, final long minimumSpace, final Set<PosixFilePermission> filePermissions,
-                  final boolean downloadsMustMatchMover, final List<Mover> movers, final boolean lazyPolling, final int maxConcurrentDownloads,
+                  final boolean downloadsMustMatchMover, final MoverMatcher moverMatcher, final boolean lazyPolling, final int maxConcurrentDownloads,
                   final boolean runOnce, final List<FileWatcher> fileWatchers, final MoverThread moverThread, final Audit audit) {
         super("Syncer");
         this.dlDirs = dlDirs;
@@ -73,7 +73,7 @@ public class Syncer extends Thread {
         this.sftps.forEach(ssh -> audit.addDownloadWatcher(ssh.getDownloadWatcher()));
         this.syncFrequency = syncFrequency;
         this.passivateEachTime = passivateEachTime;
-        this.movers = downloadsMustMatchMover ? movers : Collections.emptyList();
+        this.moverMatcher = downloadsMustMatchMover ? moverMatcher : null;
         this.minimumSpace = minimumSpace;
         this.audit = audit;
         this.filePermissions = filePermissions;
@@ -103,21 +103,31 @@ public class Syncer extends Thread {
         boolean downloaded = false;
         for (final Sftp sftp : sftps) {
             try {
-                final List<String> allFiles = sftp.listFiles();
+                final List<RemoteFile> allFiles = sftp.listRemoteFiles();
                 logger.debug(sftp.getServerName() + ": Received following files from sftp: "
-                        + allFiles.stream().map(this::normalize).collect(Collectors.joining(", ")));
+                        + allFiles.stream().map(file -> normalize(file.getName())).collect(Collectors.joining(", ")));
                 final List<String> shouldDownload = allFiles.stream()
-                        .peek(file -> audit.add(new SeenEntry(normalize(file), sftp.getServerName())))
-                        .filter(file -> syncedFiles.shouldDownload(sftp.getServerName(), normalize(file)))
+                        .peek(file -> audit.add(new SeenEntry(normalize(file.getName()), sftp.getServerName())))
+                        .filter(file -> syncedFiles.shouldDownload(sftp.getServerName(), normalize(file.getName())))
                         .filter(file -> {
-                            final boolean result = this.movers.isEmpty()
-                                    || this.movers.stream().filter(mover -> mover.shouldSubmit(Paths.get(file))).count() == 1;
+                            // match against the server's listing, so directories are judged by what's in them before
+                            // anything is downloaded
+                            boolean result;
+                            try {
+                                result = moverMatcher == null || moverMatcher.getMovers().isEmpty()
+                                        || moverMatcher.match(file).size() == 1;
+                            } catch (Exception e) {
+                                logger.error(sftp.getServerName() + ": Error matching " + file.getName(), e);
+                                result = false;
+                            }
                             if (!result) {
-                                logger.warn(sftp.getServerName() + ": Not downloading " + file + ", no single mover able to match it");
+                                logger.warn(sftp.getServerName() + ": Not downloading " + file.getName() + ", no single mover able to match it");
                             }
                             return result;
                         })
+                        .map(RemoteFile::getName)
                         .collect(Collectors.toList());
+                sftp.closeListingSession();
 
                 if (shouldDownload.isEmpty()) {
                     logger.debug(sftp.getServerName() + ": Nothing new to download, finishing");
@@ -155,6 +165,8 @@ public class Syncer extends Thread {
                 final String msg = sftp.getServerName() + ": Exception downloading or listing files";
                 logger.error(msg, e);
                 audit.add(new ErrorEntry(msg, e));
+            } finally {
+                sftp.closeListingSession();
             }
         }
         logger.debug("Finished downloading new files");
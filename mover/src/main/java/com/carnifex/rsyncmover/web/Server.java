@@ -3,6 +3,7 @@ package com.carnifex.rsyncmover.web;
 
 import com.carnifex.rsyncmover.audit.Audit;
 import com.carnifex.rsyncmover.mover.io.Mover;
+import com.carnifex.rsyncmover.mover.io.MoverMatcher;
 import com.carnifex.rsyncmover.sync.Syncer;
 import fi.iki.elonen.NanoHTTPD;
 import org.apache.logging.log4j.LogManager;
@@ -20,12 +21,12 @@ public class Server extends NanoHTTPD {
 
     private final Syncer syncer;
     private final Audit audit;
-    private final List<Mover> movers;
+    private final MoverMatcher moverMatcher;
 
-    public Server(final int port, final Syncer syncer, final List<Mover> movers, final Audit audit) {
+    public Server(final int port, final Syncer syncer, final MoverMatcher moverMatcher, final Audit audit) {
         super(port);
         this.syncer = syncer;
-        this.movers = movers;
+        this.moverMatcher = moverMatcher;
         this.audit = audit;
         try {
             this.start(SOCKET_READ_TIMEOUT);
@@ -43,8 +44,7 @@ public class Server extends NanoHTTPD {
                 final HashMap<String, String> map = new HashMap<>();
                 session.parseBody(map);
                 final String content = map.get("postData");
-                final Optional<Mover> chosen = movers.stream()
-                        .filter(mover -> mover.shouldSubmit(Paths.get(content)))
+                final Optional<Mover> chosen = moverMatcher.match(Paths.get(content)).stream()
                         .sorted((a, b) -> -Integer.compare(a.getPriority(), b.getPriority()))
                         .findFirst();
                 if (chosen.isPresent()) {
@@ -60,8 +60,12 @@ public class Server extends NanoHTTPD {
                 syncer.interrupt();
             }
             return newFixedLengthResponse("");
+        } else if (uri.endsWith("movestatus.json")) {
+            return newFixedLengthResponse(Response.Status.OK, "application/json", audit.getMoveStatusJson());
         } else if (uri.endsWith("movestatus")) {
             return newFixedLengthResponse(audit.getMoveStatus());
+        } else if (uri.endsWith("processstatus")) {
+            return newFixedLengthResponse(audit.getProcessStatus());
         } else if (uri.endsWith("downloadstatus")) {
             return newFixedLengthResponse(audit.getDownloadWatcherStatuses());
         } else if (uri.endsWith("downloadqueuestatus")) {
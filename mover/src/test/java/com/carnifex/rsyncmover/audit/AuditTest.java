@@ -1,5 +1,9 @@
 package com.carnifex.rsyncmover.audit;
 
+import com.carnifex.rsyncmover.mover.io.ContentIndex;
+import com.carnifex.rsyncmover.mover.io.MoveJournal;
+import com.carnifex.rsyncmover.mover.io.MoveQueue;
+import com.carnifex.rsyncmover.mover.io.MoverThread;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -52,4 +56,16 @@ public class AuditTest {
         final String uptime = audit.makeUptime(LocalDateTime.now().minusMinutes(57).minusHours(17).minusDays(14).minusMonths(4).minusYears(1));
         Assert.assertEquals("Uptime: 1 year 4 months 14 days 17 hours 57 minutes<br /><br />", uptime);
     }
+
+    @Test
+    public void moveStatusJson_noMovesYet() throws Exception {
+        final Audit audit = new Audit(false, null, null);
+        new MoverThread(null, null, null, false, null, 1, 10, MoveQueue.Order.SMALLEST, 0, 1, 10, new MoveJournal(null), new ContentIndex(null), audit);
+        Assert.assertEquals("[]", audit.getMoveStatusJson());
+    }
+
+    @Test
+    public void jsonString_escaped() throws Exception {
+        Assert.assertEquals("\"D:\\\\TV\\\"s\\u000a\"", Audit.jsonString("D:\\TV\"s\n"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package com.carnifex.rsyncmover.mover;
+
+import com.carnifex.rsyncmover.Utilities;
+import org.apache.commons.io.FileUtils;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class PermissionsTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PermissionsTest.class);
+
+    private static final Set<PosixFilePermission> FILE = PosixFilePermissions.fromString("rw-rw-r--");
+    private static final Set<PosixFilePermission> FOLDER = PosixFilePermissions.fromString("rwxrwxr-x");
+
+    @Test
+    public void testSetsWholeTree() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final Path dir = Files.createTempDirectory("permissions");
+        try {
+            Files.createDirectories(dir.resolve("a/b/c"));
+            Files.write(dir.resolve("a/one.mkv"), new byte[0]);
+            Files.write(dir.resolve("a/b/c/two.srt"), new byte[0]);
+            Files.setPosixFilePermissions(dir.resolve("a/b"), PosixFilePermissions.fromString("rwx------"));
+            Files.setPosixFilePermissions(dir.resolve("a/one.mkv"), PosixFilePermissions.fromString("r--------"));
+            Files.createSymbolicLink(dir.resolve("a/link"), dir.resolve("a/one.mkv"));
+
+            Permissions.setPermissions(dir.resolve("a"), FILE, FOLDER, null);
+            assertEquals(FOLDER, Files.getPosixFilePermissions(dir.resolve("a")));
+            assertEquals(FOLDER, Files.getPosixFilePermissions(dir.resolve("a/b")));
+            assertEquals(FOLDER, Files.getPosixFilePermissions(dir.resolve("a/b/c")));
+            assertEquals(FILE, Files.getPosixFilePermissions(dir.resolve("a/one.mkv")));
+            assertEquals(FILE, Files.getPosixFilePermissions(dir.resolve("a/b/c/two.srt")));
+
+            Permissions.setPermissions(dir.resolve("a"), FILE, FOLDER, Files.getOwner(dir));
+            assertEquals(Files.getOwner(dir), Files.getOwner(dir.resolve("a/b/c/two.srt")));
+            assertEquals(FILE, Files.getPosixFilePermissions(dir.resolve("a/b/c/two.srt")));
+
+            Permissions.setPermissions(dir.resolve("a/one.mkv"), PosixFilePermissions.fromString("rw-------"), FOLDER, null);
+            assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(dir.resolve("a/one.mkv")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    // sets permissions and owner on a 50k file tree, first when the permissions all need changing and then when nothing
+    // does, against setting every node one after the other as it used to
+    @Test
+    public void testPermissionsAreSetWhenOwnerCannotBe() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final Path dir = Files.createTempDirectory("permissions");
+        try {
+            Files.createDirectories(dir.resolve("a/b"));
+            Files.write(dir.resolve("a/b/one.mkv"), new byte[0]);
+            Files.setPosixFilePermissions(dir.resolve("a/b/one.mkv"), PosixFilePermissions.fromString("r--------"));
+            // not one the file system knows about, so setting it fails
+            final UserPrincipal unknown = () -> "unknown";
+
+            Permissions.setPermissions(dir.resolve("a"), FILE, FOLDER, unknown);
+            assertEquals(FOLDER, Files.getPosixFilePermissions(dir.resolve("a")));
+            assertEquals(FOLDER, Files.getPosixFilePermissions(dir.resolve("a/b")));
+            assertEquals(FILE, Files.getPosixFilePermissions(dir.resolve("a/b/one.mkv")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    @Ignore
+    public void benchmark() throws Exception {
+        final Path dir = Files.createTempDirectory("permissions");
+        try {
+            for (int i = 0; i < 500; i++) {
+                final Path sub = Files.createDirectories(dir.resolve(i / 50 + "/" + i));
+                for (int j = 0; j < 100; j++) {
+                    Files.write(sub.resolve(String.valueOf(j)), new byte[0]);
+                }
+            }
+            final Set<PosixFilePermission> otherFile = PosixFilePermissions.fromString("rw-------");
+            final Set<PosixFilePermission> otherFolder = PosixFilePermissions.fromString("rwx------");
+            final UserPrincipal owner = Files.getOwner(dir);
+            for (int round = 0; round < 5; round++) {
+                everyNode(dir, otherFile, otherFolder, owner);
+                long start = System.nanoTime();
+                everyNode(dir, FILE, FOLDER, owner);
+                final long everyNodeChanged = System.nanoTime() - start;
+                start = System.nanoTime();
+                everyNode(dir, FILE, FOLDER, owner);
+                final long everyNodeUnchanged = System.nanoTime() - start;
+
+                everyNode(dir, otherFile, otherFolder, owner);
+                start = System.nanoTime();
+                Permissions.setPermissions(dir, FILE, FOLDER, owner);
+                final long changed = System.nanoTime() - start;
+                start = System.nanoTime();
+                Permissions.setPermissions(dir, FILE, FOLDER, owner);
+                final long unchanged = System.nanoTime() - start;
+                logger.info("every node: " + everyNodeChanged / 1_000_000 + "ms changed, " + everyNodeUnchanged / 1_000_000
+                        + "ms unchanged; applier: " + changed / 1_000_000 + "ms changed, " + unchanged / 1_000_000 + "ms unchanged");
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    private static void everyNode(final Path path, final Set<PosixFilePermission> file, final Set<PosixFilePermission> folder,
+                                  final UserPrincipal owner) throws IOException {
+        Files.setPosixFilePermissions(path, Files.isDirectory(path) ? folder : file);
+        Files.setOwner(path, owner);
+        if (Files.isDirectory(path)) {
+            try (final Stream<Path> children = Files.list(path)) {
+                for (final Path child : (Iterable<Path>) children::iterator) {
+                    everyNode(child, file, folder, owner);
+                }
+            }
+        }
+    }
+}
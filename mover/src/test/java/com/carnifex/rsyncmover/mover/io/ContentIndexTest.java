@@ -0,0 +1,183 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import com.carnifex.rsyncmover.Utilities;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ContentIndexTest {
+
+    private static final int SIZE = 1 << 20;
+
+    @Test
+    public void testSameTrees() throws Exception {
+        final Path dir = Files.createTempDirectory("contentindex");
+        try {
+            final byte[] data = data();
+            write(dir.resolve("a"), data);
+            write(dir.resolve("b"), data);
+            final ContentIndex index = new ContentIndex(null);
+            assertTrue(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+            assertTrue(index.sameContents(dir.resolve("a/show/episode.mkv"), dir.resolve("b/show/episode.mkv")));
+
+            // the same size, but different in a block the samples don't cover
+            data[SIZE / 4] ^= 1;
+            Files.write(dir.resolve("b/show/episode.mkv"), data);
+            assertFalse(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+
+            Files.delete(dir.resolve("b/show/episode.srt"));
+            assertFalse(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testDifferentSizesAreNotRead() throws Exception {
+        final Path dir = Files.createTempDirectory("contentindex");
+        try {
+            Files.write(dir.resolve("a"), new byte[SIZE]);
+            Files.write(dir.resolve("b"), new byte[SIZE + 1]);
+            final ContentIndex index = new ContentIndex(null);
+            assertFalse(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+            assertEquals(0, index.getBytesHashed());
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testUnchangedFilesAreNotHashedAgain() throws Exception {
+        final Path dir = Files.createTempDirectory("contentindex");
+        try {
+            final byte[] data = data();
+            write(dir.resolve("a"), data);
+            write(dir.resolve("b"), data);
+            final Path location = dir.resolve("duplicates.index");
+            final ContentIndex index = new ContentIndex(location);
+            assertTrue(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+            final long hashed = index.getBytesHashed();
+            assertTrue(hashed >= 2L * SIZE);
+            assertTrue(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+            assertEquals(hashed, index.getBytesHashed());
+
+            index.close();
+            final ContentIndex reopened = new ContentIndex(location);
+            assertTrue(reopened.sameContents(dir.resolve("a"), dir.resolve("b")));
+            assertEquals(0, reopened.getBytesHashed());
+
+            // only the file that changed is read again
+            Files.write(dir.resolve("b/show/episode.srt"), new byte[]{1, 2});
+            Files.write(dir.resolve("a/show/episode.srt"), new byte[]{1, 2});
+            assertTrue(reopened.sameContents(dir.resolve("a"), dir.resolve("b")));
+            assertEquals(4, reopened.getBytesHashed());
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testChangeWithModifiedTimeSetBackIsHashedAgain() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final Path dir = Files.createTempDirectory("contentindex");
+        try {
+            final byte[] data = data();
+            write(dir.resolve("a"), data);
+            write(dir.resolve("b"), data);
+            final ContentIndex index = new ContentIndex(null);
+            assertTrue(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+
+            // the same size and modified time, as something like rsync -t would leave it, but not the same data
+            final Path episode = dir.resolve("b/show/episode.mkv");
+            final FileTime modified = Files.getLastModifiedTime(episode);
+            data[SIZE / 4] ^= 1;
+            Thread.sleep(10);
+            Files.write(episode, data);
+            Files.setLastModifiedTime(episode, modified);
+            assertFalse(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testSymlinksOnlyMatchTheSameTarget() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final Path dir = Files.createTempDirectory("contentindex");
+        try {
+            final byte[] data = data();
+            write(dir.resolve("a"), data);
+            write(dir.resolve("b"), data);
+            Files.createSymbolicLink(dir.resolve("a/show/sample.mkv"), Paths.get("episode.mkv"));
+            Files.createSymbolicLink(dir.resolve("b/show/sample.mkv"), Paths.get("episode.mkv"));
+            final ContentIndex index = new ContentIndex(null);
+            assertTrue(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+
+            Files.delete(dir.resolve("b/show/sample.mkv"));
+            Files.createSymbolicLink(dir.resolve("b/show/sample.mkv"), Paths.get("episode.srt"));
+            assertFalse(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+
+            // a link and the file it points to aren't the same either
+            Files.delete(dir.resolve("b/show/sample.mkv"));
+            Files.write(dir.resolve("b/show/sample.mkv"), data);
+            assertFalse(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+
+            // nor is a tree with a link the same as one without it
+            Files.delete(dir.resolve("b/show/sample.mkv"));
+            assertFalse(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testIndexIsNotRewrittenAfterEveryComparison() throws Exception {
+        final Path dir = Files.createTempDirectory("contentindex");
+        try {
+            final byte[] data = data();
+            write(dir.resolve("a"), data);
+            write(dir.resolve("b"), data);
+            final Path location = dir.resolve("duplicates.index");
+            final ContentIndex index = new ContentIndex(location);
+            assertTrue(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+            final byte[] saved = Files.readAllBytes(location);
+
+            Files.write(dir.resolve("b/show/episode.srt"), new byte[]{1, 2});
+            Files.write(dir.resolve("a/show/episode.srt"), new byte[]{1, 2});
+            assertTrue(index.sameContents(dir.resolve("a"), dir.resolve("b")));
+            assertTrue(Arrays.equals(saved, Files.readAllBytes(location)));
+
+            index.close();
+            assertFalse(Arrays.equals(saved, Files.readAllBytes(location)));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    private static byte[] data() {
+        final byte[] data = new byte[SIZE];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    private static void write(final Path root, final byte[] data) throws Exception {
+        Files.createDirectories(root.resolve("show"));
+        Files.write(root.resolve("show/episode.mkv"), data);
+        Files.write(root.resolve("show/episode.srt"), new byte[]{1});
+    }
+}
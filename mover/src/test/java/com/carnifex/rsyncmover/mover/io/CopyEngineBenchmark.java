@@ -0,0 +1,86 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+// copies a 512MB tree of 128 files with the engine and with commons-io, from tmpfs (if there is one) to the temp dir,
+// which is usually on a disk. -p source=<dir> and -p target=<dir> copy between other file systems
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CopyEngineBenchmark {
+
+    private static final int DIRECTORIES = 8;
+    private static final int FILES = 16;
+    private static final int FILE_SIZE = 4 << 20;
+
+    @Param("/dev/shm")
+    public String source;
+    // the temp dir if it's empty
+    @Param("")
+    public String target;
+
+    private Path tree;
+    private Path targetDirectory;
+    private Path copy;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        final Path sourceDirectory = Files.isDirectory(Paths.get(source)) ? Paths.get(source) : Paths.get(System.getProperty("java.io.tmpdir"));
+        tree = Files.createTempDirectory(sourceDirectory, "copyengine");
+        targetDirectory = target.isEmpty() ? Files.createTempDirectory("copyengine") : Files.createTempDirectory(Paths.get(target), "copyengine");
+        copy = targetDirectory.resolve("copy");
+        final byte[] data = new byte[FILE_SIZE];
+        new Random(1).nextBytes(data);
+        for (int directory = 0; directory < DIRECTORIES; directory++) {
+            Files.createDirectories(tree.resolve(String.valueOf(directory)));
+            for (int file = 0; file < FILES; file++) {
+                Files.write(tree.resolve(directory + "/" + file + ".mkv"), data);
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteCopy() throws IOException {
+        FileUtils.deleteDirectory(copy.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        FileUtils.deleteDirectory(tree.toFile());
+        FileUtils.deleteDirectory(targetDirectory.toFile());
+    }
+
+    @Benchmark
+    public void engine() throws IOException {
+        CopyEngine.copy(tree, copy);
+    }
+
+    @Benchmark
+    public void commonsIo() throws IOException {
+        FileUtils.copyDirectory(tree.toFile(), copy.toFile());
+    }
+}
@@ -0,0 +1,177 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import com.carnifex.rsyncmover.Utilities;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class CopyEngineTest {
+
+    private static final FileTime OLD = FileTime.fromMillis(1500000000000L);
+
+    @Test
+    public void testCopyTreeKeepsContentsTimesAndPermissions() throws Exception {
+        final Path dir = Files.createTempDirectory("copyengine");
+        try {
+            final Path from = dir.resolve("from");
+            final byte[] data = new byte[1 << 20];
+            new Random(1).nextBytes(data);
+            Files.createDirectories(from.resolve("sub/deeper"));
+            Files.write(from.resolve("a.mkv"), data);
+            Files.write(from.resolve("sub/deeper/b.srt"), new byte[0]);
+            Files.setLastModifiedTime(from.resolve("a.mkv"), OLD);
+            Files.setLastModifiedTime(from.resolve("sub"), OLD);
+            if (!Utilities.isRunningOnWindows()) {
+                Files.setPosixFilePermissions(from.resolve("a.mkv"), PosixFilePermissions.fromString("rw-r-----"));
+            }
+
+            final Path to = dir.resolve("to");
+            CopyEngine.copy(from, to);
+            assertArrayEquals(data, Files.readAllBytes(to.resolve("a.mkv")));
+            assertEquals(0, Files.size(to.resolve("sub/deeper/b.srt")));
+            assertEquals(OLD, Files.getLastModifiedTime(to.resolve("a.mkv")));
+            assertEquals(OLD, Files.getLastModifiedTime(to.resolve("sub")));
+            if (!Utilities.isRunningOnWindows()) {
+                assertEquals(PosixFilePermissions.fromString("rw-r-----"), Files.getPosixFilePermissions(to.resolve("a.mkv")));
+            }
+            assertEquals(Fingerprint.of(from), Fingerprint.of(to));
+            assertTrue(Files.exists(from.resolve("a.mkv")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testReflinkAutoCopiesEitherWay() throws Exception {
+        final Path dir = Files.createTempDirectory("copyengine");
+        try {
+            final Path from = dir.resolve("from");
+            Files.createDirectories(from.resolve("sub"));
+            Files.write(from.resolve("sub/a.mkv"), new byte[]{1, 2, 3});
+            Files.setLastModifiedTime(from.resolve("sub/a.mkv"), OLD);
+            // cloned on btrfs or xfs, copied anywhere else
+            CopyEngine.copy(from, dir.resolve("to"), CopyEngine.Reflink.AUTO);
+            assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(dir.resolve("to/sub/a.mkv")));
+            assertEquals(OLD, Files.getLastModifiedTime(dir.resolve("to/sub/a.mkv")));
+            assertEquals(Fingerprint.of(from), Fingerprint.of(dir.resolve("to")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testProgress() throws Exception {
+        final Path dir = Files.createTempDirectory("copyengine");
+        try {
+            final Path from = dir.resolve("from");
+            Files.createDirectories(from.resolve("sub"));
+            Files.write(from.resolve("a.mkv"), new byte[1000]);
+            Files.write(from.resolve("sub/b.mkv"), new byte[234]);
+            final CopyProgress progress = new CopyProgress("test", Long.MAX_VALUE);
+            CopyEngine.copy(from, dir.resolve("to"), CopyEngine.Reflink.NEVER, progress);
+            assertEquals(1234, progress.getTotal());
+            assertEquals(1234, progress.getCopied());
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testCopyFollowsTopLevelLink() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final Path dir = Files.createTempDirectory("copyengine");
+        try {
+            final Path from = dir.resolve("from");
+            Files.createDirectories(from.resolve("sub"));
+            Files.write(from.resolve("sub/a.mkv"), new byte[]{1, 2, 3});
+            Files.createSymbolicLink(from.resolve("sub/link.mkv"), from.resolve("sub/a.mkv"));
+            Files.createSymbolicLink(dir.resolve("dirlink"), from);
+            Files.createSymbolicLink(dir.resolve("filelink"), from.resolve("sub/a.mkv"));
+            CopyEngine.copy(dir.resolve("dirlink"), dir.resolve("todir"));
+            CopyEngine.copy(dir.resolve("filelink"), dir.resolve("tofile"), CopyEngine.Reflink.AUTO);
+            assertFalse(Files.isSymbolicLink(dir.resolve("todir")));
+            assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(dir.resolve("todir/sub/a.mkv")));
+            // only the link that was asked for is followed
+            assertTrue(Files.isSymbolicLink(dir.resolve("todir/sub/link.mkv")));
+            assertFalse(Files.isSymbolicLink(dir.resolve("tofile")));
+            assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(dir.resolve("tofile")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testMove() throws Exception {
+        final Path dir = Files.createTempDirectory("copyengine");
+        try {
+            final Path from = dir.resolve("from");
+            Files.createDirectories(from.resolve("sub"));
+            Files.write(from.resolve("sub/a.mkv"), new byte[]{1, 2, 3});
+            final Path to = dir.resolve("to");
+            CopyEngine.move(from, to);
+            assertFalse(Files.exists(from));
+            assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(to.resolve("sub/a.mkv")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testExistingTargetIsLeftAlone() throws Exception {
+        final Path dir = Files.createTempDirectory("copyengine");
+        try {
+            Files.write(dir.resolve("from"), new byte[]{1});
+            Files.write(dir.resolve("to"), new byte[]{2});
+            try {
+                CopyEngine.move(dir.resolve("from"), dir.resolve("to"));
+                fail();
+            } catch (FileAlreadyExistsException expected) {
+                // expected
+            }
+            assertArrayEquals(new byte[]{1}, Files.readAllBytes(dir.resolve("from")));
+            assertArrayEquals(new byte[]{2}, Files.readAllBytes(dir.resolve("to")));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    // commons-io can fail on a link that's been left dangling by deleting what it pointed to, so links are deleted as
+    // they are rather than followed
+    private static void delete(final Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path directory, final IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
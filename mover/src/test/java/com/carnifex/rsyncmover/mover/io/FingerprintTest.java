@@ -0,0 +1,68 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+
+public class FingerprintTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("fingerprint");
+        Files.createDirectories(dir.resolve("a/b"));
+        Files.write(dir.resolve("a/b/one.txt"), new byte[10]);
+        Files.write(dir.resolve("two.txt"), new byte[5]);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testSummarisesTree() throws Exception {
+        final Fingerprint fingerprint = Fingerprint.of(dir);
+        assertEquals(5, fingerprint.getCount());
+        assertEquals(15, fingerprint.getTotalSize());
+        assertEquals(fingerprint, Fingerprint.of(dir));
+    }
+
+    @Test
+    public void testNestedWriteChangesFingerprint() throws Exception {
+        final Fingerprint before = Fingerprint.of(dir);
+        Files.write(dir.resolve("a/b/one.txt"), new byte[11]);
+        assertNotEquals(before, Fingerprint.of(dir));
+    }
+
+    @Test
+    public void testSameSizeRewriteChangesFingerprint() throws Exception {
+        final Path file = dir.resolve("a/b/one.txt");
+        final Fingerprint before = Fingerprint.of(dir);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10000));
+        assertNotEquals(before, Fingerprint.of(dir));
+    }
+
+    @Test
+    public void testSingleFile() throws Exception {
+        final Fingerprint fingerprint = Fingerprint.of(dir.resolve("two.txt"));
+        assertEquals(1, fingerprint.getCount());
+        assertEquals(5, fingerprint.getTotalSize());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testMissing() throws Exception {
+        Fingerprint.of(dir.resolve("missing"));
+    }
+}
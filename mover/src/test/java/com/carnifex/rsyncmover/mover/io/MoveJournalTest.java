@@ -0,0 +1,125 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class MoveJournalTest {
+
+    @Test
+    public void testUnfinishedMovesSurviveReopening() throws Exception {
+        final Path dir = Files.createTempDirectory("movejournal");
+        try {
+            final Path location = dir.resolve("moves.journal");
+            final MoveJournal journal = new MoveJournal(location);
+            final long queued = journal.queued(Paths.get("/in/a b"), Paths.get("/out/a b"), "tv", "copy+validate");
+            final long started = journal.queued(Paths.get("/in/c"), Paths.get("/out/c"), "tv", "copy+validate");
+            final long finished = journal.queued(Paths.get("/in/d"), Paths.get("/out/d"), "movies", "move");
+            journal.started(started, false);
+            journal.stageCompleted(started, Paths.get("/out/c"));
+            journal.started(finished, false);
+            journal.finished(finished);
+            journal.close();
+
+            final List<MoveJournal.Entry> entries = new MoveJournal(location).getUnfinished();
+            assertEquals(2, entries.size());
+            assertEquals(queued, entries.get(0).getId());
+            assertEquals(Paths.get("/in/a b"), entries.get(0).getFrom());
+            assertEquals(Paths.get("/out/a b"), entries.get(0).getTo());
+            assertEquals("tv", entries.get(0).getMover());
+            assertEquals("copy+validate", entries.get(0).getOperator());
+            assertFalse(entries.get(0).isStarted());
+            assertEquals(Collections.singletonList(Paths.get("/in/a b")), entries.get(0).getStages());
+            assertTrue(entries.get(1).isStarted());
+            assertEquals(Arrays.asList(Paths.get("/in/c"), Paths.get("/out/c")), entries.get(1).getStages());
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testCopiedCheckpointSurvivesReopening() throws Exception {
+        final Path dir = Files.createTempDirectory("movejournal");
+        try {
+            final Path location = dir.resolve("moves.journal");
+            final MoveJournal journal = new MoveJournal(location);
+            final long id = journal.queued(Paths.get("/in/a"), Paths.get("/out/a"), "tv", "move");
+            final long other = journal.queued(Paths.get("/in/b"), Paths.get("/out/b"), "tv", "move");
+            journal.started(id, false);
+            journal.copied(id, Paths.get("/in/a"), Paths.get("/out/a"));
+            journal.close();
+
+            // read back from the appended lines, then from the rewritten file
+            for (int i = 0; i < 2; i++) {
+                final MoveJournal reopened = new MoveJournal(location);
+                final List<MoveJournal.Entry> entries = reopened.getUnfinished();
+                reopened.close();
+                assertEquals(2, entries.size());
+                assertEquals(Paths.get("/in/a"), entries.get(0).getCopiedFrom());
+                assertEquals(Paths.get("/out/a"), entries.get(0).getCopiedTo());
+                assertEquals(other, entries.get(1).getId());
+                assertNull(entries.get(1).getCopiedTo());
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testTornWriteIsIgnored() throws Exception {
+        final Path dir = Files.createTempDirectory("movejournal");
+        try {
+            final Path location = dir.resolve("moves.journal");
+            final MoveJournal journal = new MoveJournal(location);
+            final long id = journal.queued(Paths.get("/in/a"), Paths.get("/out/a"), "tv", "move");
+            journal.close();
+            Files.write(location, ("finished\t" + id).substring(0, 5).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            final MoveJournal reopened = new MoveJournal(location);
+            assertEquals(1, reopened.getUnfinished().size());
+            // ids carry on from the ones already used
+            assertTrue(reopened.queued(Paths.get("/in/b"), Paths.get("/out/b"), "tv", "move") > id);
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testSamePathIsOnlyQueuedOnce() throws Exception {
+        final MoveJournal journal = new MoveJournal(null);
+        final long id = journal.queued(Paths.get("/in/a"), Paths.get("/out/a"), "tv", "move");
+        assertEquals(-1, journal.queued(Paths.get("/in/a"), Paths.get("/out/a"), "tv", "move"));
+        journal.finished(id);
+        assertTrue(journal.queued(Paths.get("/in/a"), Paths.get("/out/a"), "tv", "move") > id);
+    }
+
+    @Test
+    public void testFinishingEverythingEmptiesTheFile() throws Exception {
+        final Path dir = Files.createTempDirectory("movejournal");
+        try {
+            final Path location = dir.resolve("moves.journal");
+            final MoveJournal journal = new MoveJournal(location);
+            final long id = journal.queued(Paths.get("/in/a"), Paths.get("/out/a"), "tv", "move");
+            journal.started(id, false);
+            journal.finished(id);
+            assertEquals(0, Files.size(location));
+            journal.close();
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class MoveQueueTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void testHigherPriorityThenSmallestFirst() throws Exception {
+        final MoveQueue<String> queue = new MoveQueue<>(10, MoveQueue.Order.SMALLEST, 0);
+        queue.put("archive", 0, 50_000_000_000L);
+        queue.put("episode", 0, 1_000_000_000L);
+        queue.put("subtitles", 0, 50_000L);
+        queue.put("music", 1, 80_000_000L);
+        queue.put("other subtitles", 0, 50_000L);
+        assertEquals("music", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("subtitles", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("other subtitles", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("episode", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("archive", queue.poll(0, TimeUnit.SECONDS));
+        assertNull(queue.poll(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOldestFirst() throws Exception {
+        final MoveQueue<String> queue = new MoveQueue<>(10, MoveQueue.Order.OLDEST, 0);
+        queue.put("archive", 0, 50_000_000_000L);
+        queue.put("subtitles", 0, 50_000L);
+        queue.put("music", 1, 80_000_000L);
+        assertEquals("music", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("archive", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("subtitles", queue.poll(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitingMovesAreBumpedUp() throws Exception {
+        final AtomicLong now = new AtomicLong(0);
+        final MoveQueue<String> queue = new MoveQueue<>(10, MoveQueue.Order.SMALLEST, 30 * MINUTE, now::get);
+        queue.put("archive", 0, 50_000_000_000L);
+        now.set(65 * MINUTE);
+        queue.put("subtitles", 0, 50_000L);
+        queue.put("music", 1, 80_000_000L);
+        // the archive has waited long enough to be bumped up twice, past even music
+        assertEquals("archive", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("music", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("subtitles", queue.poll(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPutWaitsForRoom() throws Exception {
+        final MoveQueue<String> queue = new MoveQueue<>(1, MoveQueue.Order.SMALLEST, 0);
+        queue.put("first", 0, 1);
+        final CountDownLatch added = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                queue.put("second", 0, 1);
+                added.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.size());
+        assertEquals("first", queue.poll(0, TimeUnit.SECONDS));
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        assertEquals("second", queue.poll(5, TimeUnit.SECONDS));
+        thread.join();
+    }
+}
@@ -0,0 +1,46 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+// builds the target path for an episode's file name with each of the target directories in config_documentation.xml,
+// as example_config.xml is empty
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MoverBenchmark {
+
+    @Param({"D:\\movies", "D:\\tv\\%(.*?)\\.?s(\\d{2})e\\d{2}%1\\Season 2\\%", "D:\\music\\_unsorted\\new$yyyyMM$",
+            "D:\\programs", "D:\\backups", "D:\\custom"})
+    public String targetDirectory;
+
+    @Param("Tv.Show.s01e04.title.mkv")
+    public String filename;
+
+    private Mover.Target target;
+
+    @Setup
+    public void createTarget() {
+        target = new Mover.Target(targetDirectory);
+    }
+
+    @Benchmark
+    public String getPath() {
+        return target.getPath(filename);
+    }
+}
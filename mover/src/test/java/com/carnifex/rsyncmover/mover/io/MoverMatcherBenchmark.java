@@ -0,0 +1,75 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+// matches 1000 release names against the test's movers, repeated -p copies=N times, one mover at a time and with the
+// matcher
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MoverMatcherBenchmark {
+
+    private static final int PATHS = 1000;
+
+    @Param("10")
+    public int copies;
+
+    private List<Mover> movers;
+    private MoverMatcher matcher;
+    private List<Path> paths;
+
+    @Setup
+    public void createMovers() {
+        movers = new ArrayList<>();
+        for (int i = 0; i < copies; i++) {
+            movers.addAll(MoverMatcherTest.movers());
+        }
+        matcher = new MoverMatcher(movers);
+        paths = new ArrayList<>();
+        for (int i = 0; i < PATHS; i++) {
+            paths.add(Paths.get("Some.Show.S0" + (i % 10) + "E" + (i % 90 + 10) + ".720p.HDTV.x264-GROUP." + (i % 2 == 0 ? "mkv" : "nfo")));
+        }
+    }
+
+    @Benchmark
+    public int perMover() {
+        int matches = 0;
+        for (final Path path : paths) {
+            for (final Mover mover : movers) {
+                if (mover.shouldSubmit(path)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int matcher() {
+        int matches = 0;
+        for (final Path path : paths) {
+            matches += matcher.match(path).size();
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,152 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import com.carnifex.rsyncmover.beans.RsyncMover.Movers;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class MoverMatcherTest {
+
+    private static Mover mover(final String name, final boolean partialMatch, final List<String> patterns,
+                               final List<String> dontMatch, final List<String> extensions) {
+        final Movers.Mover mover = new Movers.Mover();
+        mover.setName(name);
+        mover.setPartialMatch(partialMatch);
+        mover.setTargetDirectory("/" + name);
+        final Movers.Mover.Patterns p = new Movers.Mover.Patterns();
+        p.getPattern().addAll(patterns);
+        mover.setPatterns(p);
+        final Movers.Mover.DontMatchPatterns d = new Movers.Mover.DontMatchPatterns();
+        d.getPattern().addAll(dontMatch);
+        mover.setDontMatchPatterns(d);
+        final Movers.Mover.Extensions e = new Movers.Mover.Extensions();
+        e.getExtension().addAll(extensions);
+        mover.setExtensions(e);
+        return new Mover(mover, null);
+    }
+
+    // also used by MoverMatcherBenchmark
+    static List<Mover> movers() {
+        return Arrays.asList(
+                mover("tv", false, Arrays.asList(".*s\\d\\de\\d\\d.*", ".*season.\\d+.*"), Collections.singletonList(".*sample.*"), Arrays.asList("mkv", "avi")),
+                mover("tvPartial", true, Arrays.asList("s\\d\\de\\d\\d", "season.\\d+"), Collections.emptyList(), Arrays.asList("mkv", "avi", "srt")),
+                mover("music", false, Collections.emptyList(), Collections.emptyList(), Arrays.asList(".mp3", ".flac")),
+                mover("repeat", true, Collections.singletonList("(\\w)\\1"), Collections.emptyList(), Collections.emptyList()),
+                mover("everything", false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList()));
+    }
+
+    private static List<String> names(final List<Mover> movers) {
+        return movers.stream().map(Mover::getName).collect(Collectors.toList());
+    }
+
+    private static List<String> perMover(final List<Mover> movers, final Path path) {
+        return names(movers.stream().filter(mover -> mover.shouldSubmit(path)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testMatchesSameAsEachMover() throws Exception {
+        final List<Mover> movers = movers();
+        final MoverMatcher matcher = new MoverMatcher(movers);
+        for (final String name : Arrays.asList("Show.S01E02.Title.mkv", "show.s01e02.sample.mkv", "Show.Season.2.avi",
+                "show.s01e02.srt", "track.MP3", "track.flac", "mp3", "abba.txt", "a", "")) {
+            final Path path = Paths.get(name);
+            assertEquals(name, perMover(movers, path), names(matcher.match(path)));
+        }
+    }
+
+    @Test
+    public void testDirectory() throws Exception {
+        final Path dir = Files.createTempDirectory("movermatcher");
+        try {
+            Files.write(dir.resolve("show.s01e01.mkv"), new byte[0]);
+            Files.write(dir.resolve("show.s01e01.srt"), new byte[0]);
+            Files.createDirectories(dir.resolve("extras"));
+            Files.write(dir.resolve("extras/show.s01e01.sample.mkv"), new byte[0]);
+            final List<Mover> movers = movers();
+            final MoverMatcher matcher = new MoverMatcher(movers);
+            assertEquals(perMover(movers, dir), names(matcher.match(dir)));
+            assertEquals(Arrays.asList("tvPartial", "everything"), names(matcher.match(dir)));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testChangesInvalidateCachedDirectories() throws Exception {
+        final Path dir = Files.createTempDirectory("movermatcher");
+        try {
+            Files.createDirectories(dir.resolve("cd1"));
+            Files.write(dir.resolve("cd1/track.mp3"), new byte[0]);
+            final List<Mover> movers = movers();
+            final MoverMatcher matcher = new MoverMatcher(movers);
+            assertEquals(Arrays.asList("music", "everything"), names(matcher.match(dir)));
+            // nested, so only the subdirectory's cached entry is out of date
+            Files.write(dir.resolve("cd1/cover.jpg"), new byte[0]);
+            assertEquals(perMover(movers, dir), names(matcher.match(dir)));
+            assertEquals(Collections.singletonList("everything"), names(matcher.match(dir)));
+            Files.delete(dir.resolve("cd1/cover.jpg"));
+            assertEquals(Arrays.asList("music", "everything"), names(matcher.match(dir)));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testListingMatchesSameAsDisk() throws Exception {
+        final Path dir = Files.createTempDirectory("movermatcher");
+        try {
+            Files.write(dir.resolve("show.s01e01.mkv"), new byte[0]);
+            Files.createDirectories(dir.resolve("subs"));
+            Files.write(dir.resolve("subs/show.s01e01.srt"), new byte[0]);
+            Files.createDirectories(dir.resolve("empty"));
+            final MoverMatcher matcher = new MoverMatcher(movers());
+            assertEquals(names(matcher.match(dir)), names(matcher.match(listing(dir.toFile()))));
+            FileUtils.deleteDirectory(dir.resolve("empty").toFile());
+            assertEquals(names(matcher.match(dir)), names(matcher.match(listing(dir.toFile()))));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    private static MoverMatcher.Listing listing(final File file) {
+        return new MoverMatcher.Listing() {
+            @Override
+            public String getName() {
+                return file.getName();
+            }
+
+            @Override
+            public boolean isDirectory() {
+                return file.isDirectory();
+            }
+
+            @Override
+            public List<MoverMatcher.Listing> getChildren() {
+                return Stream.of(file.listFiles()).map(MoverMatcherTest::listing).collect(Collectors.toList());
+            }
+        };
+    }
+
+    @Test
+    public void testSharedPatternsAreGrouped() throws Exception {
+        final List<Mover> movers = Arrays.asList(
+                mover("a", false, Collections.singletonList(".*x.*"), Collections.emptyList(), Collections.singletonList("mkv")),
+                mover("b", false, Collections.singletonList(".*x.*"), Collections.emptyList(), Collections.singletonList("avi")));
+        final MoverMatcher matcher = new MoverMatcher(movers);
+        assertEquals(Collections.singletonList("a"), names(matcher.match(Paths.get("x.mkv"))));
+        assertEquals(Collections.singletonList("b"), names(matcher.match(Paths.get("x.avi"))));
+        assertEquals(Collections.emptyList(), names(matcher.match(Paths.get("y.avi"))));
+    }
+}
@@ -106,4 +106,14 @@ public class MoverTest {
         assertEquals(Paths.get("/dir/Tv.Show/Season 01/Tv.Show.s01e04.title.mkv"),
                 new Mover(mover, null).getTarget(Paths.get(simplePath)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getTarget_RegexGroupContainingDollar() throws Exception {
+        final String simplePath = "/$pecial.s01e01.mkv";
+        final Movers.Mover mover = new Movers.Mover();
+        mover.setPartialMatch(true);
+        mover.setTargetDirectory("/dir/%(.*?)\\.?s(\\d{2})e\\d{2}%1/Season 2/%");
+        assertEquals(Paths.get("/dir/$pecial/Season 01/$pecial.s01e01.mkv"),
+                new Mover(mover, null).getTarget(Paths.get(simplePath)));
+    }
+}
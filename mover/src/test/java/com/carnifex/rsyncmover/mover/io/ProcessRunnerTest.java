@@ -0,0 +1,61 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import com.carnifex.rsyncmover.Utilities;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ProcessRunnerTest {
+
+    @Test
+    public void testBothStreamsAreRead() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        // far more on stderr than a pipe holds, before anything on stdout
+        final ProcessRunner.Result result = ProcessRunner.run("test", Arrays.asList("sh", "-c",
+                "i=0; while [ $i -lt 20000 ]; do echo \"error line $i\" >&2; i=$((i+1)); done; echo done; exit 3"), 60000, 0);
+        assertEquals(3, result.getExitCode());
+        assertEquals(Collections.singletonList("done"), result.getStdout());
+        // only the last of them are kept
+        assertEquals(10000, result.getStderr().size());
+        assertEquals("error line 19999", result.getStderr().get(result.getStderr().size() - 1));
+        assertTrue(result.getOutputBytes() > 20000 * "error line ".length());
+        assertTrue(ProcessRunner.getStatistics().stream().anyMatch(s -> s.startsWith("test: ")));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            ProcessRunner.run("test", Arrays.asList("sleep", "30"), 300, 0);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ran for longer"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        try {
+            ProcessRunner.run("test", Arrays.asList("sh", "-c", "echo started; exec sleep 30"), 0, 300);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("printed nothing"));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ReadinessPoolTest {
+
+    @Test
+    public void testStuckCheckIsReplaced() throws Exception {
+        final ReadinessPool pool = new ReadinessPool("ReadinessPoolTest", 1, 100);
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final ReadinessPool.Check<Boolean> stuck = pool.submit(() -> {
+                blocking.countDown();
+                // like a read on a dead share, ignores being interrupted
+                for (;;) {
+                    try {
+                        release.await();
+                        return true;
+                    } catch (InterruptedException ignore) {}
+                }
+            });
+            assertTrue(blocking.await(10, TimeUnit.SECONDS));
+            final ReadinessPool.Check<Boolean> queued = pool.submit(() -> true);
+            assertFalse(pool.abandonIfStuck(stuck, System.currentTimeMillis()));
+            Thread.sleep(200);
+            assertTrue(pool.abandonIfStuck(stuck, System.currentTimeMillis()));
+            assertFalse(pool.abandonIfStuck(stuck, System.currentTimeMillis()));
+            assertEquals(2, pool.getThreadLimit());
+
+            // the check queued behind the stuck one runs on the replacement thread
+            assertTrue(queued.get(10, TimeUnit.SECONDS));
+            assertTrue(stuck.isAbandoned());
+            assertFalse(stuck.isFinished());
+
+            release.countDown();
+            for (int i = 0; i < 100 && !stuck.isFinished(); i++) {
+                Thread.sleep(50);
+            }
+            assertTrue(stuck.isFinished());
+            assertEquals(1, pool.getThreadLimit());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInterruptibleCheckIsCancelled() throws Exception {
+        final ReadinessPool pool = new ReadinessPool("ReadinessPoolTest", 1, 50);
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            final ReadinessPool.Check<Boolean> stuck = pool.submit(() -> {
+                blocking.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return true;
+            });
+            assertTrue(blocking.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertTrue(pool.abandonIfStuck(stuck, System.currentTimeMillis()));
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 100 && !stuck.isFinished(); i++) {
+                Thread.sleep(50);
+            }
+            assertTrue(stuck.isFinished());
+            assertEquals(1, pool.getThreadLimit());
+            assertTrue(pool.submit(() -> true).get(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.carnifex.rsyncmover.mover.io;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class TimingWheelTest {
+
+    @Test
+    public void testExpiry() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 0);
+        wheel.schedule("a", 2500);
+        wheel.schedule("b", 4000);
+        assertEquals(Collections.emptyList(), wheel.advance(2000));
+        assertEquals(Collections.singletonList("a"), wheel.advance(3000));
+        assertEquals(Collections.singletonList("b"), wheel.advance(4000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testReschedulePushesBack() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 0);
+        wheel.schedule("a", 2000);
+        wheel.schedule("a", 5000);
+        assertEquals(Collections.emptyList(), wheel.advance(4000));
+        assertTrue(wheel.isScheduled("a"));
+        assertEquals(Collections.singletonList("a"), wheel.advance(5000));
+        assertFalse(wheel.isScheduled("a"));
+    }
+
+    @Test
+    public void testLaterRevolution() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<>(1000, 4, 0);
+        // same bucket as tick 1, but three revolutions later
+        wheel.schedule("a", 13000);
+        assertEquals(Collections.emptyList(), wheel.advance(12000));
+        assertEquals(Collections.singletonList("a"), wheel.advance(13500));
+    }
+
+    @Test
+    public void testCatchesUpAfterFallingBehind() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<>(1000, 4, 0);
+        wheel.schedule("a", 1000);
+        wheel.schedule("b", 3000);
+        assertEquals(Arrays.asList("a", "b"), wheel.advance(100000));
+    }
+
+    @Test
+    public void testPastDeadlineFiresOnNextTick() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<>(1000, 4, 0);
+        wheel.advance(5000);
+        wheel.schedule("a", 1000);
+        assertEquals(Collections.singletonList("a"), wheel.advance(6000));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<>(1000, 4, 0);
+        wheel.schedule("a", 1000);
+        wheel.cancel("a");
+        assertEquals(Collections.emptyList(), wheel.advance(2000));
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.carnifex.rsyncmover.mover.operators;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class CompositeOperatorTest {
+
+    @Test
+    public void testOperateStageRunsOneStage() throws Exception {
+        final Path dir = Files.createTempDirectory("composite");
+        try {
+            final List<String> ran = new ArrayList<>();
+            final CompositeOperator composite = new CompositeOperator(Arrays.asList(
+                    copying("first", ran), copying("second", ran), new Delete(null, Collections.singletonList("0"))));
+            final Path from = Files.write(dir.resolve("from"), new byte[]{1});
+            final Path to = dir.resolve("to");
+            final Stages stages = stages(from);
+
+            assertEquals(dir.resolve("first"), composite.operateStage(from, to, stages));
+            assertEquals(Collections.singletonList("first"), ran);
+            assertEquals(Arrays.asList(from, dir.resolve("first")), stages.getCompleted());
+
+            composite.operateStage(from, to, stages);
+            assertEquals(Arrays.asList("first", "second"), ran);
+            assertTrue(Files.exists(from));
+            // delete still sees every stage before it, however they were run
+            composite.operateStage(from, to, stages);
+            assertFalse(Files.exists(from));
+            assertEquals(4, stages.getCompleted().size());
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testOperateCarriesOnFromStages() throws Exception {
+        final Path dir = Files.createTempDirectory("composite");
+        try {
+            final List<String> ran = new ArrayList<>();
+            final CompositeOperator composite = new CompositeOperator(Arrays.asList(copying("first", ran), copying("second", ran)));
+            final Path from = Files.write(dir.resolve("from"), new byte[]{1});
+            final Stages stages = stages(from);
+            stages.completed(Files.copy(from, dir.resolve("first")));
+            assertEquals(dir.resolve("second"), composite.operate(from, dir.resolve("to"), stages));
+            assertEquals(Collections.singletonList("second"), ran);
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    // anonymous, so it isn't picked up as an operator anyone can configure
+    private static MoveOperator copying(final String name, final List<String> ran) {
+        return new MoveOperator() {
+            @Override
+            protected Path operate(final Path from, final Path to) throws IOException {
+                ran.add(name);
+                return Files.copy(from, to.resolveSibling(name));
+            }
+
+            @Override
+            public String getMethod() {
+                return name;
+            }
+
+            @Override
+            public boolean shouldSetFilePermissions() {
+                return false;
+            }
+        };
+    }
+
+    private static Stages stages(final Path from) {
+        final List<Path> completed = new ArrayList<>(Collections.singletonList(from));
+        return new Stages() {
+            @Override
+            public List<Path> getCompleted() {
+                return completed;
+            }
+
+            @Override
+            public void completed(final Path result) {
+                completed.add(result);
+            }
+        };
+    }
+}
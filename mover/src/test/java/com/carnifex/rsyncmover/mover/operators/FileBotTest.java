@@ -1,16 +1,31 @@
 package com.carnifex.rsyncmover.mover.operators;
 
+import com.carnifex.rsyncmover.Utilities;
+import com.carnifex.rsyncmover.audit.Audit;
+import com.carnifex.rsyncmover.beans.RsyncMover.Movers;
+import com.carnifex.rsyncmover.mover.io.ContentIndex;
+import com.carnifex.rsyncmover.mover.io.MoveJournal;
+import com.carnifex.rsyncmover.mover.io.MoveQueue;
+import com.carnifex.rsyncmover.mover.io.Mover;
+import com.carnifex.rsyncmover.mover.io.MoverThread;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 public class FileBotTest {
@@ -80,4 +95,99 @@ public class FileBotTest {
         assertArrayEquals(new String[] { "filebot", "-rename", "/tv/The.Simpsons.S12.DVDRip.x264-CtrlSD",
                 "--format", "../{n}/Season {s}/{n} - {s00e00} - {t}" }, args);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAdditionalArgumentsHandling_batch() throws Exception {
+        final FileBot filebot = (FileBot) MoveOperator.create("filebot", Arrays.asList("filebot", "batch:4", "batchWait:2", "-non-strict"), null);
+        assertEquals(Arrays.asList("-non-strict", "--format", "{n}/Season {s}/{n} - {s00e00} - {t}"), filebot.additionalArguments);
+    }
+
+    @Test
+    public void findNewPath_batch() throws Exception {
+        final FileBot filebot = (FileBot) MoveOperator.create("filebot", Collections.emptyList(), null);
+        final List<String> output = Arrays.asList("Rename episodes using [TheTVDB]",
+                "[MOVE] Rename [/tv/Silicon.Valley.S03E01.mkv] to [/tv/Silicon Valley - 3x01 - Founder Friendly.mkv]",
+                "[MOVE] Rename [/tv/Silicon.Valley.S03E02.mkv] to [/tv/Silicon Valley - 3x02 - Two in the Box.mkv]",
+                "Processed 2 files");
+        assertEquals("/tv/Silicon Valley - 3x02 - Two in the Box.mkv",
+                filebot.findNewPath(filebot.linesFor(new File("/tv/Silicon.Valley.S03E02.mkv").toPath(), output)).get().toString());
+        assertEquals(Optional.empty(), filebot.findNewPath(filebot.linesFor(new File("/tv/Silicon.Valley.S03E03.mkv").toPath(), output)));
+    }
+
+    @Test
+    public void testBatchFillsFromOneStageThread() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final Path dir = Files.createTempDirectory("filebot");
+        try {
+            final Path script = fakeFilebot(dir);
+            final Path target = dir.resolve("target");
+            final Movers.Mover bean = new Movers.Mover();
+            bean.setName("tv");
+            bean.setTargetDirectory(target.toString());
+            bean.setMoveOperators(new Movers.Mover.MoveOperators());
+            bean.getMoveOperators().getMoveOperator().add(operator("move"));
+            bean.getMoveOperators().getMoveOperator().add(operator("filebot", script.toString(), "batch:3", "batchWait:10"));
+            final Audit audit = new Audit(false, null, null);
+            final Mover mover = new Mover(bean, audit);
+            // the filebot stage only has the one thread, which takes the batch from its queue
+            final MoverThread moverThread = new MoverThread(null, null, null, false, null, 1, 10, MoveQueue.Order.OLDEST, 0,
+                    1, 10, new MoveJournal(null), new ContentIndex(null), audit);
+            for (int i = 0; i < 3; i++) {
+                final Path file = Files.write(dir.resolve("episode" + i + ".mkv"), new byte[]{1});
+                moverThread.submit(file, target.resolve(file.getFileName()), mover, 1);
+            }
+            moverThread.shutdown(false);
+            for (int i = 0; i < 3; i++) {
+                assertTrue(Files.exists(target.resolve("renamed-episode" + i + ".mkv")));
+            }
+            assertEquals(1, Files.readAllLines(dir.resolve("runs")).size());
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testBatchNamesWithSpacesAndBrackets() throws Exception {
+        if (Utilities.isRunningOnWindows()) {
+            return;
+        }
+        final Path dir = Files.createTempDirectory("filebot");
+        try {
+            final FileBot filebot = (FileBot) MoveOperator.create("filebot", Arrays.asList(fakeFilebot(dir).toString(), "batch:2"), null);
+            final Path spaced = Files.write(dir.resolve("Show Name [720p] 1x01.mkv"), new byte[]{1});
+            final Path plain = Files.write(dir.resolve("Show.Name.1x02.mkv"), new byte[]{1});
+            final List<CompletableFuture<Path>> renamed = filebot.operateBatch(Arrays.asList(spaced, plain), Arrays.asList(spaced, plain));
+            assertEquals(dir.resolve("renamed-Show Name [720p] 1x01.mkv"), renamed.get(0).get());
+            assertEquals(dir.resolve("renamed-Show.Name.1x02.mkv"), renamed.get(1).get());
+            assertTrue(Files.exists(dir.resolve("renamed-Show Name [720p] 1x01.mkv")));
+            assertEquals(1, Files.readAllLines(dir.resolve("runs")).size());
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    // renames each file it's given to renamed-<name>, saying so as filebot does, and counts how many times it's run
+    private static Path fakeFilebot(final Path dir) throws IOException {
+        final Path script = dir.resolve("fake-filebot");
+        Files.write(script, Arrays.asList("#!/bin/sh",
+                "echo run >> " + dir.resolve("runs"),
+                "for f in \"$@\"; do",
+                "  if [ -f \"$f\" ]; then",
+                "    mv \"$f\" \"$(dirname \"$f\")/renamed-$(basename \"$f\")\"",
+                "    echo \"[MOVE] Rename [$f] to [$(dirname \"$f\")/renamed-$(basename \"$f\")]\"",
+                "  fi",
+                "done"), StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwx------"));
+        return script;
+    }
+
+    private static Movers.Mover.MoveOperators.MoveOperator operator(final String name, final String... arguments) {
+        final Movers.Mover.MoveOperators.MoveOperator operator = new Movers.Mover.MoveOperators.MoveOperator();
+        operator.setOperator(name);
+        operator.setAdditionalArguments(new Movers.Mover.MoveOperators.MoveOperator.AdditionalArguments());
+        operator.getAdditionalArguments().getArg().addAll(Arrays.asList(arguments));
+        return operator;
+    }
+}
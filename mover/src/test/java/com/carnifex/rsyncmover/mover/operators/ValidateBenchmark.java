@@ -0,0 +1,97 @@
+package com.carnifex.rsyncmover.mover.operators;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+// validates a copy of a 512MB file with each algorithm, and as it used to be done with -p algorithm=streamed: both hashed
+// with sha1 through a stream, 1KB at a time, one after the other. the source's modified time is moved on before each
+// run so its hash never comes from the digest cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ValidateBenchmark {
+
+    private static final int BLOCK_SIZE = 16 << 20;
+    private static final int BLOCKS = 32;
+
+    @Param({"streamed", "sha1", "sha256", "murmur3"})
+    public String algorithm;
+
+    private Path dir;
+    private List<Path> paths;
+    private Validate validate;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        dir = Files.createTempDirectory("validate");
+        paths = Arrays.asList(dir.resolve("a"), dir.resolve("b"));
+        final byte[] block = new byte[BLOCK_SIZE];
+        new Random(1).nextBytes(block);
+        for (final Path path : paths) {
+            for (int i = 0; i < BLOCKS; i++) {
+                Files.write(path, block, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        }
+        validate = algorithm.equals("streamed") ? null : new Validate(null, Collections.singletonList("algorithm:" + algorithm));
+    }
+
+    @Setup(Level.Invocation)
+    public void touchSource() throws IOException {
+        Files.setLastModifiedTime(paths.get(0), FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Benchmark
+    public boolean validate() throws IOException, NoSuchAlgorithmException {
+        if (validate == null) {
+            return Arrays.equals(streamed(paths.get(0)), streamed(paths.get(1)));
+        }
+        return validate.operateStatefully(paths.get(1), paths.get(1), paths) != null;
+    }
+
+    private static byte[] streamed(final Path path) throws IOException, NoSuchAlgorithmException {
+        try (final InputStream inputStream = Files.newInputStream(path)) {
+            final MessageDigest messageDigest = MessageDigest.getInstance("SHA1");
+            int r;
+            final byte[] b = new byte[1024];
+            while ((r = inputStream.read(b)) != -1) {
+                messageDigest.update(b, 0, r);
+            }
+            return messageDigest.digest();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.carnifex.rsyncmover.mover.operators;
+
+import com.carnifex.rsyncmover.mover.io.CopyEngine;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ValidateTest {
+
+    @Test
+    public void testMatchingTreesPass() throws Exception {
+        final Path dir = Files.createTempDirectory("validate");
+        try {
+            final Path from = tree(dir.resolve("from"));
+            final Path to = dir.resolve("to");
+            CopyEngine.copy(from, to);
+            for (final String algorithm : Arrays.asList("sha1", "sha256", "murmur3")) {
+                final Validate validate = new Validate(null, Collections.singletonList("algorithm:" + algorithm));
+                assertEquals(to, validate.operateStatefully(to, to, Arrays.asList(from, to)));
+            }
+            final Validate validate = new Validate(null, null);
+            assertEquals(to.resolve("show/episode.mkv"), validate.operateStatefully(to.resolve("show/episode.mkv"),
+                    to.resolve("show/episode.mkv"), Arrays.asList(from.resolve("show/episode.mkv"), to.resolve("show/episode.mkv"))));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testDifferencesAreNamed() throws Exception {
+        final Path dir = Files.createTempDirectory("validate");
+        try {
+            final Path from = tree(dir.resolve("from"));
+            final Path to = dir.resolve("to");
+            CopyEngine.copy(from, to);
+            final byte[] data = Files.readAllBytes(to.resolve("show/episode.mkv"));
+            data[data.length / 3] ^= 1;
+            Files.write(to.resolve("show/episode.mkv"), data);
+            try {
+                new Validate(null, null).operateStatefully(to, to, Arrays.asList(from, to));
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("[show/episode.mkv]".replace('/', to.getFileSystem().getSeparator().charAt(0))));
+            }
+
+            Files.delete(to.resolve("show/episode.srt"));
+            try {
+                new Validate(null, null).operateStatefully(to, to, Arrays.asList(from, to));
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testRewrittenFileIsReadAgain() throws Exception {
+        final Path dir = Files.createTempDirectory("validate");
+        try {
+            final Path from = tree(dir.resolve("from"));
+            final Path to = dir.resolve("to");
+            CopyEngine.copy(from, to);
+            final Validate validate = new Validate(null, null);
+            validate.operateStatefully(to, to, Arrays.asList(from, to));
+
+            // same inode, size and modified time as when it was last hashed, but not the same contents
+            final Path episode = to.resolve("show/episode.mkv");
+            final FileTime modified = Files.getLastModifiedTime(episode);
+            final byte[] data = Files.readAllBytes(episode);
+            data[data.length / 2] ^= 1;
+            Files.write(episode, data);
+            Files.setLastModifiedTime(episode, modified);
+            try {
+                validate.operateStatefully(to, to, Arrays.asList(from, to));
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("episode.mkv"));
+            }
+            // and the other way round, where the changed file is the one being compared against
+            try {
+                validate.operateStatefully(from, from, Arrays.asList(to, from));
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("episode.mkv"));
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testVerifiedCopy() throws Exception {
+        final Path dir = Files.createTempDirectory("validate");
+        try {
+            final Path from = tree(dir.resolve("from"));
+            for (final String verify : Arrays.asList("read", "sync")) {
+                final Path to = dir.resolve(verify);
+                final VerifiedCopy copy = new VerifiedCopy(null, Arrays.asList("algorithm:sha256", "verify:" + verify));
+                assertEquals(to, copy.operate(from, to));
+                new Validate(null, null).operateStatefully(to, to, Arrays.asList(from, to));
+            }
+            final Path to = dir.resolve("file.mkv");
+            new VerifiedCopy(null, null).operate(from.resolve("show/episode.mkv"), to);
+            assertTrue(Arrays.equals(Files.readAllBytes(from.resolve("show/episode.mkv")), Files.readAllBytes(to)));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    private static Path tree(final Path root) throws Exception {
+        final byte[] data = new byte[3 << 20];
+        new Random(1).nextBytes(data);
+        Files.createDirectories(root.resolve("show/extras"));
+        Files.write(root.resolve("show/episode.mkv"), data);
+        Files.write(root.resolve("show/episode.srt"), new byte[]{1, 2, 3});
+        Files.write(root.resolve("show/extras/trailer.mkv"), Arrays.copyOf(data, 1000));
+        return root;
+    }
+}
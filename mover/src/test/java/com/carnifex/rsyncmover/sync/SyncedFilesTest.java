@@ -0,0 +1,61 @@
+package com.carnifex.rsyncmover.sync;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class SyncedFilesTest {
+
+    @Test
+    public void testAddAndPersist() throws Exception {
+        final Path file = Files.createTempFile("synced", ".txt");
+        try {
+            final SyncedFiles syncedFiles = new SyncedFiles(file);
+            assertTrue(syncedFiles.shouldDownload("server", "a"));
+            syncedFiles.addDownloadedPath("server", "a");
+            assertFalse(syncedFiles.shouldDownload("server", "a"));
+            assertTrue(syncedFiles.shouldDownload("other", "a"));
+            syncedFiles.finished();
+            assertFalse(syncedFiles.shouldDownload("server", "a"));
+            assertEquals(Arrays.asList("server:::a"), Files.readAllLines(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testMergesWithFileOnPersist() throws Exception {
+        final Path file = Files.createTempFile("synced", ".txt");
+        try {
+            Files.write(file, Arrays.asList("server:::a"));
+            final SyncedFiles first = new SyncedFiles(file);
+            final SyncedFiles second = new SyncedFiles(file);
+            assertFalse(first.shouldDownload("server", "a"));
+            first.addDownloadedPath("server", "b");
+            second.addDownloadedPath("server", "c");
+            first.finished();
+            second.finished();
+            final List<String> lines = Files.readAllLines(file);
+            assertEquals(Arrays.asList("server:::a", "server:::b", "server:::c"), lines);
+            assertFalse(second.shouldDownload("server", "b"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final SyncedFiles syncedFiles = new SyncedFiles(null);
+        syncedFiles.addDownloadedPath("server", "a");
+        assertTrue(syncedFiles.shouldDownload("server", "a"));
+        syncedFiles.finished();
+    }
+}